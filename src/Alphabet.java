@@ -16,6 +16,9 @@ public SymbolTable syms                             = null;
 public int nSegments = 0;
 public int nFeatures = 0;
 public int verbosity = 0;
+byte[] features                                     = null; // features[i*nFeatures+f]: value of feature f for segment i (see feature())
+volatile HashMap<String,Integer> featureIndex       = null; // index of each feature name (see featureIndex())
+volatile SymbolTrie trie                            = null; // trie of segment symbols (see encode())
 
 public Alphabet(SymbolTable syms) {
     this.syms = syms;
@@ -32,6 +35,62 @@ public Alphabet(LinkedHashMap<String,int[]> featureMatrix, LinkedList<String> fe
     for (String sym : featureMatrix.keySet()) {
         syms.add(sym);
     }
+
+    features = new byte[nSegments*nFeatures];
+    for (int i=0; i<nSegments; i++)
+        setFeatures(i, featureMatrix.get(syms.get(i)));
+}
+
+// value (-1, 0, or +1) of feature f for segment with id i
+public int feature(int i, int f) {
+    return features[i*nFeatures+f];
+}
+
+// features of segment with id i
+public int[] features(int i) {
+    return features(i, new int[nFeatures]);
+}
+
+// writes the features of segment with id i into ftrs, returning ftrs
+public int[] features(int i, int[] ftrs) {
+    int offset = i*nFeatures;
+    for (int f=0; f<nFeatures; f++)
+        ftrs[f] = features[offset+f];
+    return ftrs;
+}
+
+private void setFeatures(int i, int[] ftrs) {
+    int offset = i*nFeatures;
+    for (int f=0; f<nFeatures; f++)
+        features[offset+f] = (byte) ftrs[f];
+}
+
+// index of the named feature (as featureNames.indexOf(ftr), 
+// but by hash lookup), or -1 if there is no such feature
+public int featureIndex(String ftr) {
+    HashMap<String,Integer> index = featureIndex;
+    if (index==null) {
+        index = new HashMap<String,Integer>();
+        int i = 0;
+        for (String name : featureNames)
+            index.putIfAbsent(name, i++);
+        featureIndex = index;
+    }
+    Integer i = index.get(ftr);
+    return (i==null) ? -1 : i;
+}
+
+// add segment with the given features, returning its id
+// (see Projection.addSegment for updating projections)
+public int addSegment(String sym, int[] ftrs) {
+    featureMatrix.put(sym, ftrs);
+    syms.add(sym);
+    nSegments = syms.size();
+    int i = syms.get(sym);
+    if (features.length<nSegments*nFeatures)
+        features = Arrays.copyOf(features, Math.max(2*features.length, nSegments*nFeatures));
+    setFeatures(i, ftrs);
+    return i;
 }
 
 // encode space-delimited segment string as int[],
@@ -46,7 +105,14 @@ public int[] encodeString(String s, boolean addWordBoundaries) {
 }
 
 // encode delimited segment string as int[]
+// (sep is a regular expression; single characters other than
+// regular expression metacharacters are handled by encode())
 public int[] encodeString(String s, String sep, boolean addWordBoundaries) {
+    if (sep.length()==1 && ".$|()[{^?*+\\".indexOf(sep.charAt(0))==-1) {
+        int[] x = new int[s.length()+2];
+        int n = encode(s, sep.charAt(0), addWordBoundaries, x);
+        return (n==x.length) ? x : Arrays.copyOf(x, n);
+    }
     if (addWordBoundaries)
         s = syms.wordBeginSym() +sep+ s +sep+ syms.wordEndSym();
 	String[] elts = s.split(sep);
@@ -63,6 +129,80 @@ public int[] encodeString(String s, String sep, boolean addWordBoundaries) {
 	return x;
 }
 
+// encode segment string delimited by sep (empty tokens are skipped) 
+// into buf, adding word boundary symbols; returns the number of 
+// segments, which is at most s.length()+2 (buf must be large enough)
+public int encode(CharSequence s, char sep, boolean addWordBoundaries, int[] buf) {
+    SymbolTrie trie = trie();
+    int n = 0;
+    if (addWordBoundaries)
+        buf[n++] = syms.wordBegin();
+    int len = s.length();
+    int start = 0;
+    for (int i=0; i<=len; i++) {
+        if (i<len && s.charAt(i)!=sep)
+            continue;
+        if (i>start) {
+            int id = trie.get(s, start, i);
+            if (id==-1) unknownSymbol(s, s.subSequence(start, i));
+            buf[n++] = id;
+        }
+        start = i+1;
+    }
+    if (addWordBoundaries)
+        buf[n++] = syms.wordEnd();
+    return n;
+}
+
+// encode segment string without delimiters into buf, adding word 
+// boundary symbols: at each position the longest matching segment 
+// symbol is taken (greedy tokenization), and whitespace between 
+// segments is skipped; returns the number of segments, which is 
+// at most s.length()+2 (buf must be large enough)
+public int encodeTokens(CharSequence s, boolean addWordBoundaries, int[] buf) {
+    SymbolTrie trie = trie();
+    int n = 0;
+    if (addWordBoundaries)
+        buf[n++] = syms.wordBegin();
+    int len = s.length();
+    int i = 0;
+    while (i<len) {
+        if (Character.isWhitespace(s.charAt(i))) {
+            i++;
+            continue;
+        }
+        long match = trie.match(s, i, len);
+        if (match==-1L) unknownSymbol(s, s.subSequence(i, i+1));
+        buf[n++] = (int) (match >>> 32);
+        i = (int) match;
+    }
+    if (addWordBoundaries)
+        buf[n++] = syms.wordEnd();
+    return n;
+}
+
+// encode segment string without delimiters as int[] (see encodeTokens())
+public int[] encodeTokens(String s, boolean addWordBoundaries) {
+    int[] x = new int[s.length()+2];
+    return Arrays.copyOf(x, encodeTokens(s, addWordBoundaries, x));
+}
+
+// trie of segment symbols, remade if symbols have been added
+private SymbolTrie trie() {
+    SymbolTrie trie = this.trie;
+    if (trie==null || trie.size!=syms.table.size()) {
+        trie = new SymbolTrie(syms);
+        this.trie = trie;
+    }
+    return trie;
+}
+
+private void unknownSymbol(CharSequence s, CharSequence sym) {
+    System.out.println("\nError: unknown symbol in string "+ s);
+    System.out.println("@ __"+ sym +"__\n");
+    throw new IllegalArgumentException("unknown symbol: "+ sym);
+}
+
 /*
 // encode delimited i/o string as int[][]
 public int[][] encodeString(String s, String sep, String ioSep) {
@@ -0,0 +1,118 @@
+// used by NextClosure, InClose, and FCbO
+// Lattice builders that enumerate each concept once by testing the 
+// canonicity of closed attribute sets (attributes are feature-value 
+// pairs, ordered as in FormalContext). Concepts are collected by 
+// enumerate() and then linked to their immediate successors as in 
+// FormalConceptAnalysis, so that all builders return the same lattice.
+
+package edu.jhu.features;
+
+import java.util.*;
+import edu.jhu.util.*;
+
+abstract class ClosureLatticeBuilder implements LatticeBuilder
+{
+
+FormalContext context = null;
+int nAttributes = 0;
+boolean topped = false;		// keep top concept? (includes all elements)
+ArrayList<long[]> extents = null;
+ArrayList<BitSet> intents = null;
+
+// set whether the top concept is kept
+public ClosureLatticeBuilder setTopped(boolean topped) {
+	this.topped = topped;
+	return this;
+}
+
+public BinaryRelation<Concept> galoisLattice(LinkedHashMap<String,int[]> featureMatrix, BitSet sigma, BitSet sigmaObserved) {
+	context = new FormalContext(featureMatrix);
+	nAttributes = context.nAttributes();
+	extents = new ArrayList<long[]>();
+	intents = new ArrayList<BitSet>();
+
+	long[] top = context.pack(sigma);
+	enumerate(top, context.attributes(top));
+	return lattice(sigma, sigmaObserved);
+}
+
+// enumerate all concepts below the top concept, 
+// passing each one to output()
+abstract void enumerate(long[] top, BitSet intent);
+
+// collect concept, omitting the (bottom) concept with empty extent
+void output(long[] extent, BitSet intent) {
+	for (long w : extent) {
+		if (w!=0L) {
+			extents.add(extent);
+			intents.add(intent);
+			return;
+		}
+	}
+}
+
+// returns true iff B1 and B2 contain the same attributes less than j
+static boolean prefixEquals(BitSet B1, BitSet B2, int j) {
+	return B1.get(0,j).equals(B2.get(0,j));
+}
+
+// link the collected concepts (except the top, unless topped) to their 
+// immediate successors, and ensure that sigmaObserved is at the top
+private BinaryRelation<Concept> lattice(BitSet sigma, BitSet sigmaObserved) {
+	BinaryRelation<Concept> lattice = new BinaryRelation<Concept>();
+	// concepts indexed by the ids of their interned extents
+	Extent.Table table = new Extent.Table();
+	Extent[] X = new Extent[extents.size()];
+	Concept[] T = new Concept[extents.size()];
+	Extent top = new Extent(context.pack(sigma));
+	for (int i=0; i<extents.size(); i++) {
+		Extent x = X[i] = table.intern(new Extent(extents.get(i)));
+		if (!topped && x.equals(top)) continue;
+		Concept Cx = new Concept(x.toBitSet(), context.features(intents.get(i)));
+		T[x.id] = Cx;
+		lattice.add(Cx);
+	}
+	for (int i=0; i<extents.size(); i++) {
+		Concept Cx = T[X[i].id];
+		if (Cx==null) continue;
+		for (Extent y : successors(X[i].words, intents.get(i))) {
+			Extent y_ = table.find(y);
+			if (y_!=null && T[y_.id]!=null)
+				lattice.add(Cx, T[y_.id]);
+		}
+	}
+
+	// ensure that sigmaObserved is at the top of the lattice 
+	// (as if there were some property shared by all elts)
+	FormalConceptAnalysis.addTop(lattice, new Concept(sigmaObserved, new int[context.nFeatures]));
+
+	return lattice;
+}
+
+// immediate successors of concept (A,B): the extents A \cap column(a), 
+// a not in B, whose intent is B plus exactly the attributes that 
+// induce them (as in sprout() and completeIntent() of 
+// FormalConceptAnalysis)
+private ArrayList<Extent> successors(long[] A, BitSet B) {
+	HashMap<Extent,BitSet> children = new HashMap<Extent,BitSet>();
+	for (int a=B.nextClearBit(0); a<nAttributes; a=B.nextClearBit(a+1)) {
+		long[] C = new long[context.nWords];
+		if (!context.intersect(A, a, C))
+			continue;
+		Extent child = new Extent(C);
+		BitSet induced = children.get(child);
+		if (induced==null) {
+			induced = (BitSet) B.clone();
+			children.put(child, induced);
+		}
+		induced.set(a);
+	}
+	ArrayList<Extent> successors = new ArrayList<Extent>();
+	for (Map.Entry<Extent,BitSet> child : children.entrySet()) {
+		if (context.attributes(child.getKey().words).equals(child.getValue()))
+			successors.add(child.getKey());
+	}
+	return successors;
+}
+
+}
@@ -0,0 +1,89 @@
+// Lazy enumeration of the concepts of a feature matrix, for contexts 
+// whose lattice is too large to build with a LatticeBuilder. Concepts 
+// are generated depth-first by Close-by-One (as in InClose and FCbO),
+// one per call to next(), with an explicit stack that holds only the 
+// pending children of the concepts on the current path. Links between 
+// concepts are not computed.
+// Extents shrink along every path, so subtrees below the minimum 
+// extent size are pruned without being generated:
+//		new ConceptIterator(featureMatrix, sigma)
+//			.setMinExtent(5)
+//			.stream()
+//			.filter(...)
+// Unlike the lattice builders, the top concept (extent sigma) is 
+// included; the bottom concept is included only if its extent is 
+// non-empty.
+
+package edu.jhu.features;
+
+import java.util.*;
+import java.util.stream.*;
+
+public class ConceptIterator implements Iterator<Concept>
+{
+
+FormalContext context = null;
+int nAttributes = 0;
+int minExtent = 1;		// smallest extent size generated
+ArrayDeque<Frame> stack = new ArrayDeque<Frame>();
+
+// concept (A,B) whose children are made from attributes y, y+1, ...
+private static class Frame
+{
+	long[] A;
+	BitSet B;
+	int y;
+	Frame(long[] A, BitSet B, int y) { this.A = A; this.B = B; this.y = y; }
+}
+
+public ConceptIterator(LinkedHashMap<String,int[]> featureMatrix, BitSet sigma) {
+	context = new FormalContext(featureMatrix);
+	nAttributes = context.nAttributes();
+	long[] top = context.pack(sigma);
+	stack.push(new Frame(top, context.attributes(top), 0));
+}
+
+// set the smallest extent size of the concepts that are generated
+public ConceptIterator setMinExtent(int minExtent) {
+	this.minExtent = Math.max(minExtent, 1);
+	return this;
+}
+
+public boolean hasNext() {
+	// only the top can be on the stack with an extent that is too small
+	while (!stack.isEmpty() && FormalContext.cardinality(stack.peek().A)<minExtent)
+		stack.pop();
+	return !stack.isEmpty();
+}
+
+public Concept next() {
+	if (!hasNext())
+		throw new NoSuchElementException();
+	Frame X = stack.pop();
+
+	// push canonical children in reverse order, so that they are
+	// generated in the same order as by recursion
+	ArrayList<Frame> children = new ArrayList<Frame>();
+	for (int j=X.B.nextClearBit(X.y); j<nAttributes; j=X.B.nextClearBit(j+1)) {
+		long[] C = new long[context.nWords];
+		if (!context.intersect(X.A, j, C))
+			continue;
+		if (FormalContext.cardinality(C)<minExtent)
+			continue;
+		BitSet D = context.attributes(C);
+		if (ClosureLatticeBuilder.prefixEquals(D, X.B, j))
+			children.add(new Frame(C, D, j+1));
+	}
+	for (int i=children.size()-1; i>=0; i--)
+		stack.push(children.get(i));
+
+	return new Concept(BitSet.valueOf(X.A), context.features(X.B));
+}
+
+// remaining concepts as a sequential stream
+public Stream<Concept> stream() {
+	return StreamSupport.stream(
+		Spliterators.spliteratorUnknownSize(this, Spliterator.DISTINCT | Spliterator.NONNULL), false);
+}
+
+}
@@ -0,0 +1,252 @@
+// Concept lattice (Hasse diagram) that can be updated in place when
+// an object (segment) or an attribute (feature-value pair) is added
+// to the formal context. Incremental algorithm of:
+//		Godin, Robert, Rokia Missaoui, and Hassan Alaoui. 1995.
+//		Incremental Concept Formation Algorithms Based on Galois
+//		(Concept) Lattices.
+// Attributes are added with the dual of the object algorithm.
+// As in FormalConceptAnalysis, concepts with empty extents are
+// not represented; the top concept is always present.
+
+package edu.jhu.features;
+
+import java.util.*;
+import edu.jhu.util.*;
+
+public class ConceptLattice
+{
+
+public ArrayList<Node> nodes	= new ArrayList<Node>();	// all concepts
+public Node top					= null;						// concept containing all objects
+
+// concept with its immediate predecessors (supersets)
+// and successors (subsets); hashing and equality are by
+// identity, as extents and intents change during updates
+public static class Node
+{
+	public Concept concept				= null;
+	public LinkedHashSet<Node> parents	= new LinkedHashSet<Node>();
+	public LinkedHashSet<Node> children	= new LinkedHashSet<Node>();
+	Node image							= null;	// temporary: concept that this one maps to in an update
+	Node(Concept concept) { this.concept = concept; }
+}
+
+// concepts affected by a single update
+public static class Update
+{
+	public ArrayList<Node> created	= new ArrayList<Node>();	// new concepts
+	public ArrayList<Node> modified	= new ArrayList<Node>();	// concepts whose extent or intent grew
+	public HashSet<Node> relinked	= new HashSet<Node>();		// concepts whose parents changed
+}
+
+// make lattice from a Hasse diagram (successor relation on concepts);
+// the concept with no predecessors is the top
+public ConceptLattice(BinaryRelation<Concept> hasse) {
+	HashMap<Concept,Node> M = new HashMap<Concept,Node>();
+	for (Concept x : hasse.S) {
+		Node n = new Node(x);
+		M.put(x, n);
+		nodes.add(n);
+	}
+	for (Concept x : hasse.S) {
+		for (Concept y : hasse.get(x)) {
+			link(M.get(x), M.get(y));
+		}
+	}
+	for (Node n : nodes) {
+		if (n.parents.isEmpty()) top = n;
+	}
+}
+
+// add object x with attributes ftrs (as in FormalConceptAnalysis,
+// a feature vector with values -1/0/+1) to the lattice
+public Update addObject(int x, int[] ftrs) {
+	Update update = new Update();
+	BitSet fx = attributes(ftrs);
+
+	// visit concepts from larger to smaller extents (so that parents
+	// are visited before their children), mapping each one to the
+	// concept whose intent is its intent \cap ftrs
+	ArrayList<Node> order = new ArrayList<Node>(nodes);
+	order.sort((n1, n2) -> n2.concept.extent.cardinality() - n1.concept.extent.cardinality());
+	LinkedHashSet<Node> leaves = new LinkedHashSet<Node>();
+	for (Node n : order)
+		if (n.children.isEmpty()) leaves.add(n);
+	HashMap<BitSet,Node> intentToNode = new HashMap<BitSet,Node>();
+	for (Node g : order) {
+		BitSet intent = attributes(g.concept.intent);
+		BitSet J = (BitSet) intent.clone();
+		J.and(fx);
+		if (J.equals(intent)) {
+			// modified concept: all attributes shared by x
+			g.concept.extent.set(x);
+			g.image = g;
+			intentToNode.put(J, g);
+			update.modified.add(g);
+		}
+		else if (intentToNode.containsKey(J)) {
+			g.image = intentToNode.get(J);
+		}
+		else {
+			// g is the generator of new concept (extent(g) + x, J)
+			BitSet extent = (BitSet) g.concept.extent.clone();
+			extent.set(x);
+			Node n = create(extent, meet(g.concept.intent, ftrs), g.parents, g, update);
+			g.image = n;
+			intentToNode.put(J, n);
+		}
+	}
+
+	// the (unrepresented) bottom concept has all attributes, so it
+	// generates the concept ({x},ftrs) unless that intent exists already
+	if (!intentToNode.containsKey(fx)) {
+		BitSet extent = new BitSet();
+		extent.set(x);
+		create(extent, Arrays.copyOf(ftrs, ftrs.length), leaves, null, update);
+	}
+
+	// the top concept is replaced if it does not contain x
+	while (!top.parents.isEmpty())
+		top = top.parents.iterator().next();
+
+	for (Node n : order) n.image = null;
+	return update;
+}
+
+// add attribute (f,v), possessed by the objects in column, to the lattice
+public Update addAttribute(int f, int v, BitSet column) {
+	Update update = new Update();
+
+	// visit concepts from smaller to larger extents (so that children
+	// are visited before their parents), mapping each one to the concept
+	// whose extent is its extent \cap column
+	ArrayList<Node> order = new ArrayList<Node>(nodes);
+	order.sort((n1, n2) -> n1.concept.extent.cardinality() - n2.concept.extent.cardinality());
+	HashMap<BitSet,Node> extentToNode = new HashMap<BitSet,Node>();
+	for (Node g : order) {
+		BitSet K = (BitSet) g.concept.extent.clone();
+		K.and(column);
+		if (K.isEmpty()) {
+			continue;
+		}
+		if (K.equals(g.concept.extent)) {
+			// modified concept: all objects possess (f,v)
+			g.concept.intent[f] = v;
+			g.image = g;
+			extentToNode.put(K, g);
+			update.modified.add(g);
+		}
+		else if (extentToNode.containsKey(K)) {
+			g.image = extentToNode.get(K);
+		}
+		else {
+			// g is the generator of new concept (K, intent(g) + (f,v))
+			int[] intent = Arrays.copyOf(g.concept.intent, g.concept.intent.length);
+			intent[f] = v;
+			Node n = new Node(new Concept(K, intent));
+			nodes.add(n);
+			update.created.add(n);
+			// children of the new concept are the maximal images
+			// of the children of its generator
+			for (Node c : extremal(images(g.children), false)) {
+				unlink(g, c);
+				link(n, c);
+				update.relinked.add(c);
+			}
+			link(g, n);
+			update.relinked.add(n);
+			g.image = n;
+			extentToNode.put(K, n);
+		}
+	}
+
+	for (Node n : order) n.image = null;
+	return update;
+}
+
+// Hasse diagram of the lattice
+public BinaryRelation<Concept> toBinaryRelation() {
+	BinaryRelation<Concept> hasse = new BinaryRelation<Concept>();
+	for (Node n : nodes) {
+		hasse.add(n.concept);
+		for (Node c : n.children)
+			hasse.add(n.concept, c.concept);
+	}
+	return hasse;
+}
+
+// makes new concept generated by g (null for the bottom concept) in an
+// object update; parents of the new concept are the minimal images of
+// the given parents of its generator
+private Node create(BitSet extent, int[] intent, Collection<Node> generatorParents, Node g, Update update) {
+	Node n = new Node(new Concept(extent, intent));
+	nodes.add(n);
+	update.created.add(n);
+	for (Node p : extremal(images(generatorParents), true)) {
+		if (g!=null) unlink(p, g);
+		link(p, n);
+	}
+	if (g!=null) {
+		link(n, g);
+		update.relinked.add(g);
+	}
+	update.relinked.add(n);
+	return n;
+}
+
+private LinkedHashSet<Node> images(Collection<Node> S) {
+	LinkedHashSet<Node> images = new LinkedHashSet<Node>();
+	for (Node n : S)
+		if (n.image!=null) images.add(n.image);
+	return images;
+}
+
+// minimal (or maximal) elements of S w.r.t. extent inclusion
+private ArrayList<Node> extremal(Collection<Node> S, boolean minimal) {
+	ArrayList<Node> value = new ArrayList<Node>();
+	for (Node n : S) {
+		boolean extremal = true;
+		for (Node m : S) {
+			if (m==n) continue;
+			if ((minimal && properSubsetOf(m.concept.extent, n.concept.extent)) ||
+				(!minimal && properSubsetOf(n.concept.extent, m.concept.extent))) {
+				extremal = false;
+				break;
+			}
+		}
+		if (extremal) value.add(n);
+	}
+	return value;
+}
+
+private static boolean properSubsetOf(BitSet S1, BitSet S2) {
+	if (S1.cardinality()>=S2.cardinality()) return false;
+	BitSet tmp = (BitSet) S1.clone();
+	tmp.andNot(S2);
+	return tmp.isEmpty();
+}
+
+private static void link(Node parent, Node child) {
+	parent.children.add(child);
+	child.parents.add(parent);
+}
+
+private static void unlink(Node parent, Node child) {
+	parent.children.remove(child);
+	child.parents.remove(parent);
+}
+
+// attribute set of a feature vector (attribute indices as in FormalContext)
+private static BitSet attributes(int[] ftrs) {
+	BitSet A = new BitSet(2*ftrs.length);
+	for (int f=0; f<ftrs.length; f++)
+		if (ftrs[f]!=0) A.set(FormalContext.attribute(f, ftrs[f]));
+	return A;
+}
+
+// attributes shared by two feature vectors
+private static int[] meet(int[] ftrs1, int[] ftrs2) {
+	return FeatureUtil.minimalGeneralization(Arrays.copyOf(ftrs1, ftrs1.length), ftrs2);
+}
+
+}
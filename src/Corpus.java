@@ -1,26 +1,35 @@
 package edu.jhu.features;
 
 import java.util.*;
-import java.util.stream.*;
 import edu.jhu.util.*;
 
 public class Corpus
 {
 
 public Alphabet A = null;
-public LinkedHashMap<String,Counter> data = null;
-public LinkedHashMap<String,int[]> endata = null;
 public TreeMap<Integer,Counter> lengthDistrib = null;
 public int size = 0;
 boolean addWordBoundaries = true;
 
-// set by compile()
+// the forms are stored in columns indexed by form id, in order of
+// first occurrence, which are kept up to date as forms are counted;
+// the segments of form j are segments[start(j)] ... segments[end(j)-1]
+// (read in place, e.g. with Projection.project(segments, start(j), end(j)),
+// or copied with form(j)); the columns have spare capacity until
+// compile() is called
 public int data_size = 0;
 public double total_data_freq = 0.0;
-public double[] data_freq = null;
-public int[][] rawData = null;
+public double[] data_freq = null;       // data_freq[j]: frequency of form j
+public int[] segments = null;           // segments of all forms, one after another
+public int[] offsets = null;            // offsets[j]: position of form j in segments
+
+// open-addressing hash table from segment sequences to form ids
+// (table[k]==j+1 for form j, 0 for an empty slot; linear probing)
+int[] table     = null;
+int[] hashes    = null;     // hashes[j]: hash of form j
+int[] buffer    = null;     // encoded form (see update())
+
 
-   
 public Corpus(Alphabet A) {
     this(A, false);
 }
@@ -28,71 +37,157 @@ public Corpus(Alphabet A) {
 public Corpus(Alphabet A, boolean addWordBoundaries) {
     this.A = A;
     this.addWordBoundaries = addWordBoundaries;
-    data = new LinkedHashMap<String,Counter>();
-    endata = new LinkedHashMap<String,int[]>();
     lengthDistrib = new TreeMap<Integer,Counter>();
     size = 0;
+    data_freq = new double[16];
+    segments = new int[64];
+    offsets = new int[17];
+    table = new int[32];
+    hashes = new int[16];
+    buffer = new int[64];
 }
 
 public void update(String form, int freq) {
-    int[] enform = A.encodeString(form, " ", addWordBoundaries);
-    if (data.containsKey(form)) {
-        data.get(form).increment(freq);
-    } else {
-        data.put(form, new Counter(freq));
-        endata.put(form, enform);
+    if (buffer.length<form.length()+2)
+        buffer = new int[2*form.length()+2];
+    int n = A.encode(form, ' ', addWordBoundaries, buffer);
+    update(buffer, 0, n, false, freq);
+}
+
+// xxx todo: why are start and end needed? why no freq argument?
+public void updateCounts(int[] x, int start, int end) {
+    update(x, start, end, addWordBoundaries, 1);
+}
+
+// count form x[start..end-1] (between word boundary symbols if
+// addWordBoundaries) freq times, adding it if it is new
+private void update(int[] x, int start, int end, boolean addWordBoundaries, int freq) {
+    int h = hash(x, start, end, addWordBoundaries);
+    int mask = table.length-1;
+    int k = h & mask;
+    int j = -1;
+    while (table[k]!=0) {
+        j = table[k]-1;
+        if (hashes[j]==h && equals(j, x, start, end, addWordBoundaries))
+            break;
+        j = -1;
+        k = (k+1) & mask;
     }
+    if (j==-1)
+        j = add(x, start, end, addWordBoundaries, h, k);
+    data_freq[j] += freq;
+    total_data_freq += freq;
 
-    int n = enform.length;
+    int n = offsets[j+1] - offsets[j];
     if (lengthDistrib.containsKey(n))
         lengthDistrib.get(n).increment(freq);
     else
         lengthDistrib.put(n, new Counter(freq));
-    
+
     size += freq;
 }
 
-// xxx todo: why are start and end needed? why no freq argument?
-public void updateCounts(int[] x, int start, int end) {
-    int[] enform = null;
-
-    // todo: replace with version of Alphabet.decodeString
-    String form = IntStream.range(start, end)
-        .mapToObj(i -> A.syms.get(x[i]))
-        .collect(Collectors.joining(" "));
-    if (data.containsKey(form)) {
-        data.get(form).increment();
-        enform = endata.get(form);
-    }
-    else {
-        enform = A.encodeString(form, " ", addWordBoundaries);
-        data.put(form, new Counter(1));
-        endata.put(form, enform);
+// append form to the columns as form data_size,
+// entering it in slot k of the hash table
+private int add(int[] x, int start, int end, boolean addWordBoundaries, int h, int k) {
+    int j = data_size;
+    int n = (end-start) + (addWordBoundaries ? 2 : 0);
+    // (columns may have been trimmed by compile())
+    if (j==data_freq.length)
+        data_freq = Arrays.copyOf(data_freq, Math.max(16, 2*j));
+    if (j==hashes.length)
+        hashes = Arrays.copyOf(hashes, Math.max(16, 2*j));
+    if (j+1==offsets.length)
+        offsets = Arrays.copyOf(offsets, Math.max(17, 2*j+1));
+    int offset = offsets[j];
+    if (segments.length<offset+n)
+        segments = Arrays.copyOf(segments, Math.max(2*segments.length, offset+n));
+    if (addWordBoundaries)
+        segments[offset++] = A.syms.wordBegin();
+    System.arraycopy(x, start, segments, offset, end-start);
+    offset += end-start;
+    if (addWordBoundaries)
+        segments[offset++] = A.syms.wordEnd();
+    offsets[j+1] = offset;
+    hashes[j] = h;
+    table[k] = j+1;
+    data_size++;
+    if (2*data_size>table.length)
+        rehash();
+    return j;
+}
+
+// double the hash table (at most half full)
+private void rehash() {
+    table = new int[2*table.length];
+    int mask = table.length-1;
+    for (int j=0; j<data_size; j++) {
+        int k = hashes[j] & mask;
+        while (table[k]!=0)
+            k = (k+1) & mask;
+        table[k] = j+1;
     }
+}
 
-    int n = enform.length;
-    if (lengthDistrib.containsKey(n))
-        lengthDistrib.get(n).increment(1);
-    else
-        lengthDistrib.put(n, new Counter(1));
+// polynomial hash of x[start..end-1] (between word boundary symbols
+// if addWordBoundaries), rolled over the segments and then mixed
+private int hash(int[] x, int start, int end, boolean addWordBoundaries) {
+    int h = 1;
+    if (addWordBoundaries)
+        h = 31*h + A.syms.wordBegin();
+    for (int i=start; i<end; i++)
+        h = 31*h + x[i];
+    if (addWordBoundaries)
+        h = 31*h + A.syms.wordEnd();
+    h ^= (h >>> 16);
+    h *= 0x85ebca6b;
+    h ^= (h >>> 13);
+    return h;
+}
 
-    size++;
+// is form j the same as x[start..end-1] (between word boundary
+// symbols if addWordBoundaries)?
+private boolean equals(int j, int[] x, int start, int end, boolean addWordBoundaries) {
+    int offset = offsets[j];
+    int n = offsets[j+1] - offset;
+    if (n!=(end-start) + (addWordBoundaries ? 2 : 0))
+        return false;
+    if (addWordBoundaries) {
+        if (segments[offset]!=A.syms.wordBegin() || segments[offset+n-1]!=A.syms.wordEnd())
+            return false;
+        offset++;
+    }
+    for (int i=start; i<end; i++)
+        if (segments[offset++]!=x[i]) return false;
+    return true;
 }
 
-// do not call update() or updateCounts() after
-// calling compile() on this corpus
+// trim the spare capacity of the columns (see above), e.g. once the 
+// corpus is complete; forms can still be counted afterwards
 public void compile() {
-    data_size       = data.size();
-    rawData         = new int[data_size][];
-    data_freq       = new double[data_size];
-    total_data_freq = 0.0;
-    int i = 0;
-    for (Map.Entry<String,Counter> entry : data.entrySet()) {
-        rawData[i]      =   endata.get(entry.getKey());
-        data_freq[i]    =   entry.getValue().intValue();
-        total_data_freq +=  data_freq[i];
-        i++;
-    }
+    offsets         = Arrays.copyOf(offsets, data_size+1);
+    data_freq       = Arrays.copyOf(data_freq, data_size);
+    segments        = Arrays.copyOf(segments, offsets[data_size]);
+}
+
+// position of form j in segments
+public int start(int j) {
+    return offsets[j];
+}
+
+// position after form j in segments
+public int end(int j) {
+    return offsets[j+1];
+}
+
+// number of segments in form j
+public int length(int j) {
+    return offsets[j+1] - offsets[j];
+}
+
+// segments of form j (a copy)
+public int[] form(int j) {
+    return Arrays.copyOfRange(segments, offsets[j], offsets[j+1]);
 }
 
 }
@@ -54,12 +54,10 @@ public static void main(String[] args) throws Exception {
     A.syms.setWordEnd("#>");
     Corpus corpus = apply(args[1], A, true);
 
-    Counter freq = null;
-    int[] enform = null;
-    for (String form : corpus.data.keySet()) {
-        freq = corpus.data.get(form);
-        enform = corpus.endata.get(form);
-        System.out.println(form +" -> "+ Arrays.toString(enform) +" / "+ freq);
+    corpus.compile();
+    for (int j=0; j<corpus.data_size; j++) {
+        int[] enform = corpus.form(j);
+        System.out.println(A.decodeString(enform) +" -> "+ Arrays.toString(enform) +" / "+ (int) corpus.data_freq[j]);
     }
     System.out.println("corpus length distrib: "+ corpus.lengthDistrib);
 }
@@ -0,0 +1,110 @@
+// used by FormalConceptAnalysis and ClosureLatticeBuilder
+// Immutable set of segments, packed into words as in FormalContext, 
+// with a precomputed hash. Extents are interned in a Table, which 
+// gives each distinct extent a dense id; two extents from the same 
+// table are equal iff they are the same object (otherwise extents are 
+// compared by segments), so lattice bookkeeping can index arrays and 
+// BitSets by id instead of hashing segment sets.
+
+package edu.jhu.features;
+
+import java.util.*;
+
+final class Extent
+{
+
+final long[] words;
+final int hash;
+Table table = null;	// table that interned this extent (null if none)
+int id = -1;		// index in that table (-1 if none)
+
+// words must not be modified afterwards
+Extent(long[] words) {
+	this.words = words;
+	this.hash = Arrays.hashCode(words);
+}
+
+public int hashCode() {
+	return hash;
+}
+
+public boolean equals(Object o) {
+	if (o==this) return true;
+	if (!(o instanceof Extent)) return false;
+	Extent x = (Extent) o;
+	if (table!=null && table==x.table) return false;	// distinct extents of one table
+	return (hash==x.hash && Arrays.equals(words, x.words));
+}
+
+public boolean isEmpty() {
+	for (long w : words)
+		if (w!=0L) return false;
+	return true;
+}
+
+public boolean intersects(Extent x) {
+	for (int w=0; w<words.length; w++)
+		if ((words[w] & x.words[w])!=0L) return true;
+	return false;
+}
+
+// returns true iff this is a subset (proper or not) of x
+public boolean subsetOf(Extent x) {
+	for (int w=0; w<words.length; w++)
+		if ((words[w] & ~x.words[w])!=0L) return false;
+	return true;
+}
+
+// intersection of this and x (not interned)
+public Extent and(Extent x) {
+	long[] words_ = new long[words.length];
+	for (int w=0; w<words.length; w++)
+		words_[w] = words[w] & x.words[w];
+	return new Extent(words_);
+}
+
+public BitSet toBitSet() {
+	return BitSet.valueOf(words);
+}
+
+public String toString() {
+	return toBitSet().toString();
+}
+
+// hash-consing table: one canonical Extent object per segment set, 
+// with ids 0, 1, 2, ... in order of interning (not thread-safe)
+static class Table
+{
+	HashMap<Extent,Extent> canonical = new HashMap<Extent,Extent>();
+	ArrayList<Extent> extents = new ArrayList<Extent>();
+
+	// canonical extent equal to x, adding x (or a copy of x if it 
+	// belongs to another table) if there is none
+	Extent intern(Extent x) {
+		if (x.table==this) return x;
+		Extent y = canonical.get(x);
+		if (y==null) {
+			y = (x.table==null) ? x : new Extent(x.words);
+			y.table = this;
+			y.id = extents.size();
+			canonical.put(y, y);
+			extents.add(y);
+		}
+		return y;
+	}
+
+	// canonical extent equal to x, or null if there is none
+	Extent find(Extent x) {
+		return (x.table==this) ? x : canonical.get(x);
+	}
+
+	Extent get(int id) {
+		return extents.get(id);
+	}
+
+	int size() {
+		return extents.size();
+	}
+}
+
+}
@@ -0,0 +1,55 @@
+// Galois lattice construction by Close-by-One with inherited 
+// failed canonicity tests:
+//		Outrata, Jan, and Vilem Vychodil. 2012. Fast Algorithm for 
+//		Computing Fixpoints of Galois Connections Induced by 
+//		Object-Attribute Relational Data.
+
+package edu.jhu.features;
+
+import java.util.*;
+
+public class FCbO extends ClosureLatticeBuilder
+{
+
+void enumerate(long[] top, BitSet intent) {
+	fcbo(top, intent, 0, new BitSet[nAttributes]);
+}
+
+// N[j] is the intent that failed the canonicity test for attribute j
+// in an ancestor (null if none); any descendant whose intent does not
+// contain its attributes less than j would fail the test again
+private void fcbo(long[] A, BitSet B, int y, BitSet[] N) {
+	output(A, B);
+
+	BitSet[] M = Arrays.copyOf(N, N.length);
+	ArrayList<long[]> childExtents = new ArrayList<long[]>();
+	ArrayList<BitSet> childIntents = new ArrayList<BitSet>();
+	ArrayList<Integer> childAttributes = new ArrayList<Integer>();
+	for (int j=B.nextClearBit(y); j<nAttributes; j=B.nextClearBit(j+1)) {
+		if (N[j]!=null && !prefixSubset(N[j], B, j))
+			continue;
+		long[] C = new long[context.nWords];
+		if (!context.intersect(A, j, C))
+			continue;
+		BitSet D = context.attributes(C);
+		if (prefixEquals(D, B, j)) {
+			childExtents.add(C);
+			childIntents.add(D);
+			childAttributes.add(j);
+		} else {
+			M[j] = D;
+		}
+	}
+
+	for (int i=0; i<childExtents.size(); i++)
+		fcbo(childExtents.get(i), childIntents.get(i), childAttributes.get(i)+1, M);
+}
+
+// returns true iff the attributes of B1 less than j are in B2
+private static boolean prefixSubset(BitSet B1, BitSet B2, int j) {
+	BitSet tmp = B1.get(0,j);
+	tmp.andNot(B2);
+	return tmp.isEmpty();
+}
+
+}
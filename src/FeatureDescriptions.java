@@ -0,0 +1,299 @@
+// Feature descriptions of segment sets (natural classes) on a projection.
+// A description is a set of feature specifications whose denotation 
+// is exactly the segment set; it can only use specifications in the 
+// intent of the set, and it must exclude every other segment on the 
+// projection. So descriptions are the covers of those segments by the 
+// (complements of the) attribute columns in the intent:
+//		shortest()		a shortest description, found by branch-and-bound;
+//						ties are broken in favor of earlier features, so 
+//						the description is canonical
+//		irredundant()	all descriptions from which no specification can 
+//						be removed (minimal covers)
+// The search stops when the budget (nodes visited, time) is used up; 
+// shortest() then returns the best description found so far (at worst 
+// the greedy one of NaturalClassUtil.minimalFeatures()), irredundant() 
+// the descriptions found so far, and complete is false.
+// note: descriptions of complement classes are not computed (their 
+// feature specifications are those of the classes they complement)
+
+package edu.jhu.features;
+
+import java.util.*;
+
+public class FeatureDescriptions
+{
+
+Projection proj         = null;
+BitSet[] columns        = null;     // see Projection.attributeSegments()
+int nFeatures           = 0;
+long maxNodes           = 1000000;  // search nodes per segment set (<=0: no limit)
+long timeLimit          = 0;        // milliseconds per segment set (<=0: no limit)
+int maxDescriptions     = 1000;     // irredundant descriptions per segment set (<=0: no limit)
+public boolean complete = true;     // did the last search finish within the budget?
+
+// state of the current search
+int[] attributes        = null;     // candidate attributes
+BitSet[] covers         = null;     // covers[i]: segments excluded by attributes[i]
+long nodes              = 0;
+long deadline           = 0;
+int[] best              = null;     // best cover (indices into attributes)
+ArrayList<int[]> found  = null;
+
+public FeatureDescriptions(Projection proj) {
+    this.proj = proj;
+    this.columns = proj.attributeSegments();
+    this.nFeatures = proj.getAlphabet().nFeatures;
+}
+
+// set the maximum number of search nodes per segment set
+public FeatureDescriptions setMaxNodes(long maxNodes) {
+    this.maxNodes = maxNodes;
+    return this;
+}
+
+// set the time limit (in milliseconds) per segment set
+public FeatureDescriptions setTimeLimit(long timeLimit) {
+    this.timeLimit = timeLimit;
+    return this;
+}
+
+// set the maximum number of irredundant descriptions per segment set
+public FeatureDescriptions setMaxDescriptions(int maxDescriptions) {
+    this.maxDescriptions = maxDescriptions;
+    return this;
+}
+
+// shortest description of segs, or null if segs has no description
+public int[] shortest(BitSet segs) {
+    if (!start(segs))
+        return null;
+    // initial bound: greedy description
+    int[] greedy = NaturalClassUtil.minimalFeatures(proj, segs, intent(segs));
+    best = indices(greedy);
+    shortest(new BitSet(), uncovered(segs), new int[0]);
+    return features(best);
+}
+
+// all irredundant descriptions of segs (within the budget)
+public List<int[]> irredundant(BitSet segs) {
+    found = new ArrayList<int[]>();
+    if (start(segs))
+        irredundant(0, new int[0], uncovered(segs), new BitSet[0]);
+    ArrayList<int[]> value = new ArrayList<int[]>();
+    for (int[] D : found)
+        value.add(features(D));
+    return value;
+}
+
+// shortest descriptions of the natural classes, indexed by id
+// (null for complement classes)
+public int[][] shortest(NaturalClasses C) {
+    int[][] value = new int[C.nNaturalClasses][];
+    boolean complete_ = true;
+    for (NaturalClass x : C.naturalClasses) {
+        if (x.complement) continue;
+        value[x.id] = shortest(x.segs);
+        complete_ &= complete;
+    }
+    complete = complete_;
+    return value;
+}
+
+// irredundant descriptions of the natural classes, indexed by id
+// (null for complement classes)
+public List<List<int[]>> irredundant(NaturalClasses C) {
+    ArrayList<List<int[]>> value = new ArrayList<List<int[]>>(Collections.nCopies(C.nNaturalClasses, (List<int[]>) null));
+    boolean complete_ = true;
+    for (NaturalClass x : C.naturalClasses) {
+        if (x.complement) continue;
+        value.set(x.id, irredundant(x.segs));
+        complete_ &= complete;
+    }
+    complete = complete_;
+    return value;
+}
+
+// set up search for segs; returns false if segs has no description
+private boolean start(BitSet segs) {
+    complete = true;
+    nodes = 0;
+    deadline = (timeLimit>0) ? System.nanoTime() + timeLimit*1000000L : Long.MAX_VALUE;
+    best = null;
+
+    // candidate attributes: those in the intent of segs that exclude
+    // some other segment, in order of features
+    BitSet others = uncovered(segs);
+    ArrayList<Integer> A = new ArrayList<Integer>();
+    ArrayList<BitSet> covers_ = new ArrayList<BitSet>();
+    int[] intent = intent(segs);
+    for (int f=0; f<nFeatures; f++) {
+        if (intent[f]==0) continue;
+        int a = FormalContext.attribute(f, intent[f]);
+        BitSet cover = (BitSet) others.clone();
+        cover.andNot(columns[a]);
+        if (cover.isEmpty()) continue;
+        A.add(a);
+        covers_.add(cover);
+    }
+    attributes = A.stream().mapToInt(a -> a).toArray();
+    covers = covers_.toArray(new BitSet[0]);
+
+    // segs has a description iff the whole intent excludes all others
+    BitSet all = new BitSet();
+    for (BitSet cover : covers) all.or(cover);
+    return all.equals(others);
+}
+
+// segments on the projection (other than segs) that a description must exclude
+private BitSet uncovered(BitSet segs) {
+    BitSet others = (BitSet) proj.segmentMask.clone();
+    others.andNot(segs);
+    return others;
+}
+
+// attributes shared by all segments in segs, as a feature vector
+private int[] intent(BitSet segs) {
+    int[] ftrs = new int[nFeatures];
+    for (int f=0; f<nFeatures; f++) {
+        for (int v=-1; v<=1; v+=2) {
+            BitSet tmp = (BitSet) segs.clone();
+            tmp.andNot(columns[FormalContext.attribute(f, v)]);
+            if (tmp.isEmpty()) ftrs[f] = v;
+        }
+    }
+    return ftrs;
+}
+
+// is the budget used up? (checks the clock every 1024 nodes)
+private boolean exhausted() {
+    nodes++;
+    if ((maxNodes>0 && nodes>maxNodes) || ((nodes & 1023)==0 && System.nanoTime()>deadline))
+        complete = false;
+    return !complete;
+}
+
+// branch-and-bound: branch on the attributes that cover the uncovered 
+// segment with fewest covering attributes; bound by the number of 
+// attributes still needed if each covered as many segments as the 
+// largest remaining cover
+private void shortest(BitSet chosen, BitSet uncovered, int[] D) {
+    if (exhausted())
+        return;
+    if (uncovered.isEmpty()) {
+        if (D.length<best.length || (D.length==best.length && lexLess(sorted(D), best)))
+            best = sorted(D);
+        return;
+    }
+    int maxCover = 0;
+    int t = -1;
+    int nt = Integer.MAX_VALUE;
+    for (int s=uncovered.nextSetBit(0); s!=-1; s=uncovered.nextSetBit(s+1)) {
+        int n = 0;
+        for (int i=0; i<covers.length; i++)
+            if (!chosen.get(i) && covers[i].get(s)) n++;
+        if (n<nt) { nt = n; t = s; }
+    }
+    for (int i=0; i<covers.length; i++) {
+        if (chosen.get(i)) continue;
+        BitSet tmp = (BitSet) covers[i].clone();
+        tmp.and(uncovered);
+        maxCover = Math.max(maxCover, tmp.cardinality());
+    }
+    int bound = D.length + (uncovered.cardinality()+maxCover-1)/maxCover;
+    if (bound>best.length)
+        return;
+    for (int i=0; i<covers.length; i++) {
+        if (chosen.get(i) || !covers[i].get(t)) continue;
+        BitSet uncovered_ = (BitSet) uncovered.clone();
+        uncovered_.andNot(covers[i]);
+        int[] D_ = Arrays.copyOf(D, D.length+1);
+        D_[D.length] = i;
+        chosen.set(i);
+        shortest(chosen, uncovered_, D_);
+        chosen.clear(i);
+        if (!complete) return;
+    }
+}
+
+// enumerate minimal covers by including or excluding each attribute 
+// in order; private[j] holds the segments covered only by D[j] 
+// (a cover is irredundant iff every attribute has a private segment, 
+// and adding attributes never adds private segments)
+private void irredundant(int i, int[] D, BitSet uncovered, BitSet[] private_) {
+    if (exhausted())
+        return;
+    if (uncovered.isEmpty()) {
+        found.add(D);
+        if (maxDescriptions>0 && found.size()>=maxDescriptions)
+            complete = false;
+        return;
+    }
+    if (i==covers.length)
+        return;
+    // prune if the remaining attributes cannot cover the uncovered segments
+    BitSet rest = new BitSet();
+    for (int j=i; j<covers.length; j++) rest.or(covers[j]);
+    BitSet tmp = (BitSet) uncovered.clone();
+    tmp.andNot(rest);
+    if (!tmp.isEmpty())
+        return;
+
+    // include attribute i, if it covers some uncovered segment
+    // and leaves every chosen attribute a private segment
+    BitSet gain = (BitSet) covers[i].clone();
+    gain.and(uncovered);
+    if (!gain.isEmpty()) {
+        BitSet[] private__ = new BitSet[private_.length+1];
+        boolean redundant = false;
+        for (int j=0; j<private_.length; j++) {
+            private__[j] = (BitSet) private_[j].clone();
+            private__[j].andNot(covers[i]);
+            if (private__[j].isEmpty()) { redundant = true; break; }
+        }
+        if (!redundant) {
+            private__[private_.length] = gain;
+            BitSet uncovered_ = (BitSet) uncovered.clone();
+            uncovered_.andNot(covers[i]);
+            int[] D_ = Arrays.copyOf(D, D.length+1);
+            D_[D.length] = i;
+            irredundant(i+1, D_, uncovered_, private__);
+            if (!complete) return;
+        }
+    }
+    // exclude attribute i
+    irredundant(i+1, D, uncovered, private_);
+}
+
+// convert feature vector to sorted indices into attributes
+private int[] indices(int[] ftrs) {
+    ArrayList<Integer> D = new ArrayList<Integer>();
+    for (int i=0; i<attributes.length; i++) {
+        int f = attributes[i] >>> 1;
+        if (ftrs[f]!=0) D.add(i);
+    }
+    return D.stream().mapToInt(i -> i).toArray();
+}
+
+// convert indices into attributes to feature vector
+private int[] features(int[] D) {
+    int[] ftrs = new int[nFeatures];
+    for (int i : D) {
+        int a = attributes[i];
+        ftrs[a >>> 1] = ((a & 1)==0) ? 1 : -1;
+    }
+    return ftrs;
+}
+
+private static int[] sorted(int[] D) {
+    int[] value = Arrays.copyOf(D, D.length);
+    Arrays.sort(value);
+    return value;
+}
+
+private static boolean lexLess(int[] D1, int[] D2) {
+    for (int i=0; i<D1.length; i++)
+        if (D1[i]!=D2[i]) return (D1[i]<D2[i]);
+    return false;
+}
+
+}
@@ -31,6 +31,76 @@ public static int[] minimalGeneralization(int[] ftrs1, int[] ftrs2) {
     return ftrs1;
 }
 
+// packed feature vectors: the specifications of features 0..n-1 as 
+// two bit planes of w = (n+63)/64 words each, packed[0..w-1] for + 
+// values and packed[w..2w-1] for - values; operations on packed 
+// vectors handle 64 features per word
+
+// length of packed feature vectors for n features
+public static int packedLength(int n) {
+    return 2*((n+63)/64);
+}
+
+// pack feature vector (-1/0/+1)
+public static long[] pack(int[] ftrs) {
+    int w = (ftrs.length+63)/64;
+    long[] packed = new long[2*w];
+    for (int i=0; i<ftrs.length; i++) {
+        if (ftrs[i]==1)
+            packed[i >>> 6] |= (1L << i);
+        else if (ftrs[i]==-1)
+            packed[w + (i >>> 6)] |= (1L << i);
+    }
+    return packed;
+}
+
+// unpack feature vector of n features
+public static int[] unpack(long[] packed, int n) {
+    int w = packed.length/2;
+    int[] ftrs = new int[n];
+    for (int i=0; i<n; i++) {
+        if ((packed[i >>> 6] & (1L << i))!=0L)
+            ftrs[i] = 1;
+        else if ((packed[w + (i >>> 6)] & (1L << i))!=0L)
+            ftrs[i] = -1;
+    }
+    return ftrs;
+}
+
+// does packed feature vector packed1 subsume packed2?
+public static boolean subsumes(long[] packed1, long[] packed2) {
+    for (int i=0; i<packed1.length; i++)
+        if ((packed1[i] & ~packed2[i])!=0L) return false;
+    return true;
+}
+
+// minimal generalization of packed1 given packed2
+// (note: modifies and returns packed1, as minimalGeneralization(int[],int[]))
+public static long[] minimalGeneralization(long[] packed1, long[] packed2) {
+    for (int i=0; i<packed1.length; i++)
+        packed1[i] &= packed2[i];
+    return packed1;
+}
+
+// do packed1 and packed2 have no conflicting specifications?
+public static boolean compatible(long[] packed1, long[] packed2) {
+    int w = packed1.length/2;
+    for (int i=0; i<w; i++)
+        if (((packed1[i] & packed2[w+i]) | (packed1[w+i] & packed2[i]))!=0L) return false;
+    return true;
+}
+
+// unification of packed1 and packed2 (all specifications of both), 
+// or null if they conflict
+public static long[] unify(long[] packed1, long[] packed2) {
+    if (!compatible(packed1, packed2))
+        return null;
+    long[] packed = new long[packed1.length];
+    for (int i=0; i<packed.length; i++)
+        packed[i] = packed1[i] | packed2[i];
+    return packed;
+}
+
 // convert feature vector (in extended sense allowing complements) to string
 public static String toString(Alphabet A, int[] ftrs, boolean complement) {
     String value = IntStream.range(0, A.nFeatures)
@@ -43,7 +113,7 @@ public static String toString(Alphabet A, int[] ftrs, boolean complement) {
 // convert string (possibly including complement symbol) to feature vector
 public static int[] fromString(Alphabet A, String s) {
     int[] ftrs = new int[A.nFeatures];
-    s = s.replace("[", "").replace("]", "").replace("[^]", "").replaceAll(" ", "");
+    s = s.replace("[", "").replace("]", "").replace("^", "").replaceAll(" ", "");
     if (s.equals("")) return ftrs;  // maximally underspecified feature matrix
     String ftr = null;
     String val = null;
@@ -51,7 +121,7 @@ public static int[] fromString(Alphabet A, String s) {
         ftr = fv.substring(1);
         val = fv.substring(0,1);
         try {
-        ftrs[A.featureNames.indexOf(ftr)] =
+        ftrs[A.featureIndex(ftr)] =
             (val.equals(PLUS)) ? 1 : val.equals(MINUS) ? -1 : 0;
         } catch (Exception e) { System.out.println("Error: "+ ftr +" "+ val); System.exit(1); }
     }
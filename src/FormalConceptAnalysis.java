@@ -13,19 +13,54 @@ import java.util.*;
 import java.util.stream.*;
 import edu.jhu.util.*;
 
-public class FormalConceptAnalysis
+public class FormalConceptAnalysis implements LatticeBuilder
 {
 
-static LinkedHashSet<BitSet> Q = new LinkedHashSet<BitSet>();
+LinkedHashSet<Extent> Q = new LinkedHashSet<Extent>();
+Extent.Table extents = null;	// interned extents of the lattice being built
+Extent.Table observedExtents = null;	// interned observed segments of those extents (see observed())
 int nSegments = 0;
 int nFeatures = 0;
 int[][] featureMatrix = null;
-static boolean prune = true;	// prune as in edu.jhu.maxent.CorpusBasedPruner
-static boolean topped = false;	// keep top concept? (includes all elements)
+FormalContext context = null;	// bit-packed attribute columns of featureMatrix
+boolean prune = true;	// prune as in edu.jhu.maxent.CorpusBasedPruner
+boolean topped = false;	// keep top concept? (includes all elements)
+int parallelism = 1;	// number of threads used to expand each level of the queue
+
+public LatticeMetrics metrics = null;	// counters and timers of the last call to galoisLattice()
 
 static int verbosity = 0;
 
+public FormalConceptAnalysis() { }
+
+public FormalConceptAnalysis(int parallelism) {
+	setParallelism(parallelism);
+}
+
+// set pruning w.r.t. observed segments
+public FormalConceptAnalysis setPrune(boolean prune) {
+	this.prune = prune;
+	return this;
+}
+
+// set whether the top concept is kept
+public FormalConceptAnalysis setTopped(boolean topped) {
+	this.topped = topped;
+	return this;
+}
+
+// set the number of threads used to build the lattice
+// (values less than one use all available processors)
+public FormalConceptAnalysis setParallelism(int parallelism) {
+	this.parallelism = (parallelism<1) ?
+		Runtime.getRuntime().availableProcessors() : parallelism;
+	return this;
+}
+
 public BinaryRelation<Concept> galoisLattice(LinkedHashMap<String,int[]> featureMatrix_, BitSet sigma, BitSet sigmaObserved) {
+	LatticeMetrics.LatticeBuildEvent event = new LatticeMetrics.LatticeBuildEvent();
+	event.begin();
+	long start = System.nanoTime();
     nSegments = featureMatrix_.size();
     nFeatures = featureMatrix_.values().stream().findFirst().get().length;
 
@@ -34,158 +69,278 @@ public BinaryRelation<Concept> galoisLattice(LinkedHashMap<String,int[]> feature
     for (int[] ftrs : featureMatrix_.values()) {
         featureMatrix[seg_indx++] = ftrs;
     }
+    context = new FormalContext(featureMatrix, nFeatures);
+	metrics = new LatticeMetrics();
+	metrics.nSegments = nSegments;
+	metrics.nFeatures = nFeatures;
 
-    // initialize set of extents, successor relation, blocked extents
-	HashMap<BitSet,int[]> T = new HashMap<BitSet,int[]>();
-	HashMap<BitSet,HashSet<BitSet>> succ = new HashMap<BitSet,HashSet<BitSet>>();
-	HashSet<BitSet> blocked = new HashSet<BitSet>();
+    // initialize interned extents, set of extents (T, indexed by extent id), 
+    // successor relation, blocked extents
+	extents = new Extent.Table();
+	observedExtents = new Extent.Table();
+	ArrayList<int[]> T = new ArrayList<int[]>();
+	ArrayList<BitSet> succ = new ArrayList<BitSet>();
+	BitSet blocked = new BitSet();
+	// extents linked into succ so far, indexed by the id of their 
+	// observed segments (used to check for blocking; ids are those
+	// of observedExtents)
+	ArrayList<BitSet> observed = new ArrayList<BitSet>();
+	Extent obs = new Extent(context.pack(sigmaObserved));
 
 	// initialize queue with the extent containing all of the 
 	// segments in Sigma
-	BitSet top = (BitSet) sigma.clone();
+	Extent top = extents.intern(new Extent(context.pack(sigma)));
 	Q.clear();
 	Q.add(top);
+	if (prune)
+		update(observed,observed(top,obs).id,top.id);
 	if (topped) 
-		T.put(top,intent(top));
+		put(T,top.id,intent(top));
 	
 	// make galois lattice
+	// each pass takes the extents currently on the queue (one level of 
+	// the lattice) and expands them, possibly in parallel; the results 
+	// are merged in queue order, so the lattice is identical to the one 
+	// built by dequeuing and expanding one extent at a time 
+	// (in a shared pool, see Pools)
 	while (!Q.isEmpty()) {
-		Iterator<BitSet> iter = Q.iterator();
-		BitSet extent = iter.next(); iter.remove();
-
-		if (prune) {
-			// check for blocking by a superset of extent 
-			// (note that all supersets have already been enumerated)
-			if (blocked(extent,top,succ,sigmaObserved)) {
-				blocked.add(extent);
-			}
-			// do not enumerate children if extent (and therefore all 
-			// extent subsets) has null intersection with sigmaObserved
-			if (!extent.intersects(sigmaObserved)) {
-				continue;
-			}
-		}
+		metrics.levels++;
+		List<Extent> level = new ArrayList<Extent>(Q);
+		List<Expansion> expansions = expand(level, obs);
+		for (int i=0; i<level.size(); i++) {
+			Extent extent = level.get(i);
+			Q.remove(extent);
 
-        // xxx todo: document (refer to Choi \& Huang 2006)
-		Concept C = new Concept(extent,intent(extent));
-		LinkedList<Concept> children = sprout(C);
-		for (Concept child : children) {
-			if (!T.containsKey(child.extent)) {
-				if (completeIntent(child,C)) {
-					update(succ,extent,child.extent);
-					Q.add(child.extent);
+			if (prune) {
+				// check for blocking by a superset of extent 
+				// (note that all supersets have already been enumerated)
+				long t = System.nanoTime();
+				if (blocked(extent,observed,obs)) {
+					blocked.set(extent.id);
+				}
+				metrics.blockingTime += System.nanoTime()-t;
+				// do not enumerate children if extent (and therefore all 
+				// extent subsets) has null intersection with sigmaObserved
+				if (!extent.intersects(obs)) {
+					continue;
 				}
-				child.intent = union(C.intent,child.intent);
-				T.put(child.extent,child.intent);
 			}
-			else if (Arrays.equals(union(C.intent,child.intent), intent(child.extent))) {
-				update(succ,extent,child.extent);
-				Q.add(child.extent);
+
+			// xxx todo: document (refer to Choi \& Huang 2006)
+			// (children are interned here, in queue order, so that 
+			// extent ids do not depend on the parallel expansion)
+			Expansion X = expansions.get(i);
+			metrics.sprouts++;
+			metrics.protoChildren += X.protoChildren;
+			metrics.maxProtoChildren = Math.max(metrics.maxProtoChildren, X.protoChildren);
+			metrics.children += X.children.size();
+			metrics.sproutTime += X.sproutTime;
+			metrics.intentTime += X.intentTime;
+			for (int j=0; j<X.children.size(); j++) {
+				if (!X.complete[j]) metrics.incompleteIntents++;
+				Extent child = extents.intern(X.children.get(j));
+				if (get(T,child.id)==null) {
+					if (X.complete[j]) {
+						link(succ,observed,extent,child,obs);
+						Q.add(child);
+					}
+					put(T,child.id,union(X.intent,X.intents.get(j)));
+				}
+				else if (X.complete[j]) {
+					link(succ,observed,extent,child,obs);
+					Q.add(child);
+				}
 			}
+			metrics.maxQueue = Math.max(metrics.maxQueue, Q.size());
 		}
 	}
 
 	// post-processing
+	long post = System.nanoTime();
+	metrics.blocked = blocked.cardinality();
+	metrics.extents = extents.size();
 	// remove blocked extents
-	if (verbosity>0) System.out.println("# blocked: "+ blocked.size());
-	for (BitSet extent : blocked) {
-		T.remove(extent);
+	if (verbosity>0) System.out.println("# blocked: "+ blocked.cardinality());
+	for (int x=blocked.nextSetBit(0); x!=-1; x=blocked.nextSetBit(x+1)) {
+		put(T,x,null);
 	}
 	// map extents (and associated succ relation) to concepts
 	BinaryRelation<Concept> lattice = new BinaryRelation<Concept>();
-	HashMap<BitSet,Concept> extentToConcept = new HashMap<BitSet,Concept>();
-	for (BitSet x : T.keySet()) {
-		Concept Cx = new Concept(x,intent(x));
-		extentToConcept.put(x,Cx);
+	Concept[] extentToConcept = new Concept[extents.size()];
+	for (int x=0; x<T.size(); x++) {
+		if (T.get(x)==null) continue;
+		Extent extent = extents.get(x);
+		Concept Cx = new Concept(extent.toBitSet(),intent(extent));
+		extentToConcept[x] = Cx;
 		lattice.add(Cx);
 	}
-	for (BitSet x : succ.keySet()) {
-		if (!T.containsKey(x)) continue;
-		for (BitSet y : succ.get(x)) {
-			if (!T.containsKey(y)) continue;
-			Concept Cx = extentToConcept.get(x);
-			Concept Cy = extentToConcept.get(y);
+	for (int x=0; x<succ.size(); x++) {
+		Concept Cx = extentToConcept[x];
+		if (Cx==null || succ.get(x)==null) continue;
+		BitSet succ_x = succ.get(x);
+		for (int y=succ_x.nextSetBit(0); y!=-1; y=succ_x.nextSetBit(y+1)) {
+			Concept Cy = extentToConcept[y];
+			if (Cy==null) continue;
 			lattice.add(Cx,Cy);
 		}
 	}
+	extents = null;
+	observedExtents = null;
 	
 	// ensure that sigmaObserved is at the top of the lattice 
 	// (as if there were some property shared by all elts)
-	Concept Call = new Concept(sigmaObserved,new int[nFeatures]);
-	if (!lattice.S.contains(Call)) {
-		for (Concept Cx : new HashSet<Concept>(lattice.S)) {
-			lattice.add(Call,Cx);
-		}
-		lattice.S.add(Call);
-	}
+	addTop(lattice, new Concept(sigmaObserved,new int[nFeatures]));
+
+	metrics.concepts = lattice.S.size();
+	metrics.postTime = System.nanoTime()-post;
+	metrics.totalTime = System.nanoTime()-start;
+	metrics.commit(event);
+	if (verbosity>1) System.out.println(metrics);
 
 	return lattice;
 }
 
+// adds concept Call at the top of the lattice unless it is already 
+// there; Call is linked only to the concepts without predecessors, 
+// so that the lattice remains a Hasse diagram (succ links each concept 
+// to its immediate successors only)
+static void addTop(BinaryRelation<Concept> lattice, Concept Call) {
+	if (lattice.S.contains(Call))
+		return;
+	HashSet<Concept> roots = new HashSet<Concept>(lattice.S);
+	for (Concept Cx : lattice.S) {
+		roots.removeAll(lattice.get(Cx));
+	}
+	for (Concept Cx : roots) {
+		lattice.add(Call,Cx);
+	}
+	lattice.S.add(Call);
+}
+
+
+// children of a concept on the queue, with the result of 
+// completeIntent() for each child (computed before merging); 
+// child extents are not yet interned
+private static class Expansion
+{
+	int[] intent = null;
+	ArrayList<Extent> children = null;
+	ArrayList<int[]> intents = null;
+	boolean[] complete = null;
+	int protoChildren = 0;
+	long sproutTime = 0;
+	long intentTime = 0;
+}
+
+// expands each extent in a level of the queue; extents that
+// would be skipped by pruning are not expanded (null entries)
+private List<Expansion> expand(List<Extent> level, Extent obs) {
+	if (parallelism<=1) {
+		return level.stream()
+			.map(x -> expand(x, obs))
+			.collect(Collectors.toList());
+	}
+	return Pools.invoke(parallelism, () -> level.parallelStream()
+		.map(x -> expand(x, obs))
+		.collect(Collectors.toList())
+	);
+}
+
+// sprouts the concept with the given extent and tests each child 
+// for completeness; reads but does not modify the lattice built so far
+private Expansion expand(Extent extent, Extent obs) {
+	if (prune && !extent.intersects(obs))
+		return null;
+	Expansion X = new Expansion();
+	long t0 = System.nanoTime();
+	X.intent = intent(extent);
+	LinkedHashMap<Extent,int[]> D = sprout(extent, X.intent);
+	long t1 = System.nanoTime();
+	// each proto-child contributes one attribute to the child it is collapsed into
+	for (int[] intent : D.values())
+		for (int v : intent)
+			if (v!=0) X.protoChildren++;
+	X.children = new ArrayList<Extent>(D.keySet());
+	X.intents = new ArrayList<int[]>(D.values());
+	X.complete = new boolean[X.children.size()];
+	for (int j=0; j<X.complete.length; j++)
+		X.complete[j] = completeIntent(X.children.get(j),X.intents.get(j),X.intent);
+	X.sproutTime = t1-t0;
+	X.intentTime = System.nanoTime()-t1;
+	return X;
+}
+
+// adds child to succ.get(parent) and, if pruning, indexes child 
+// by its observed segments
+private void link(ArrayList<BitSet> succ, ArrayList<BitSet> observed, Extent parent, Extent child, Extent obs) {
+	update(succ,parent.id,child.id);
+	if (prune)
+		update(observed,observed(child,obs).id,child.id);
+}
+
+// observed segments of extent (interned in observedExtents, 
+// so that they do not take ids of lattice extents)
+private Extent observed(Extent extent, Extent obs) {
+	return observedExtents.intern(extent.and(obs));
+}
 
 // utility function: adds y to map.get(x), 
 // creating map.get(x) if it does not already exist
-private void update(HashMap<BitSet,HashSet<BitSet>> map, BitSet x, BitSet y) {
-	HashSet<BitSet> map_x = map.get(x);
+private static void update(ArrayList<BitSet> map, int x, int y) {
+	BitSet map_x = get(map,x);
 	if (map_x==null) {
-		map_x = new HashSet<BitSet>();
-		map.put(x,map_x);
+		map_x = new BitSet();
+		put(map,x,map_x);
 	}
-	map_x.add(y);
+	map_x.set(y);
 }
 
-// returns a list of all 'children' of a given concept 
-// (as in Choi \& Huang 2006)
-private LinkedList<Concept> sprout(Concept C) {
-	// identify the attributes (feature-value pairs) that are in the attribute 
-	// set of at least one member of C but not in the attribute set of C
-    // (because they are not shared by all members of C)
-	HashMap<FeatureValuePair,BitSet> R = new HashMap<FeatureValuePair,BitSet>();
-	for (int a=C.extent.nextSetBit(0); a!=-1; a=C.extent.nextSetBit(a+1)) {
-		for (int f=0; f<nFeatures; f++) {
-			if (featureMatrix[a][f]!=0 && featureMatrix[a][f]!=C.intent[f]) {
-				FeatureValuePair fv = new FeatureValuePair(f,featureMatrix[a][f]);
-				if (!R.containsKey(fv))
-					R.put(fv,new BitSet());
-			}
-		}
-	}
+// utility functions: list indexed by extent id, 
+// with null for ids that have no entry
+private static <E> E get(ArrayList<E> list, int x) {
+	return (x<list.size()) ? list.get(x) : null;
+}
 
-    // for each such attribute identified immed. above, find all members
-	// of C that posssess the attribute -- this creates a 'proto-child'
-    for (Map.Entry<FeatureValuePair,BitSet> protoChild : R.entrySet()) {
-        FeatureValuePair fv = protoChild.getKey();
-        BitSet S = protoChild.getValue();
-        for (int a=C.extent.nextSetBit(0); a!=-1; a=C.extent.nextSetBit(a+1))
-            if (featureMatrix[a][fv.ftr]==fv.val)
-                S.set(a);
-    }
+private static <E> void put(ArrayList<E> list, int x, E value) {
+	while (list.size()<=x)
+		list.add(null);
+	list.set(x, value);
+}
 
-	// collapse (i.e., merge the attributes of) proto-children that
-    // have the same extent within C, making new concepts
-	HashMap<BitSet,Concept> D = new HashMap<BitSet,Concept>();
-	for (Map.Entry<FeatureValuePair,BitSet> protoChild : R.entrySet()) {
-		FeatureValuePair fv = protoChild.getKey();
-		BitSet S = protoChild.getValue();
-		if (!D.containsKey(S)) {
-			int[] intent = new int[nFeatures];
-			intent[fv.ftr] = fv.val;
-			D.put(S, new Concept((BitSet) S.clone(), intent));
-		} else {
-			Concept X = D.get(S);
-			// X.extent.or(S); // X = D.get(S) => X.extent == S
-			X.intent[fv.ftr] = fv.val;  // collapse (merge) attributes
+// returns all 'children' of a given concept (as in Choi \& Huang 2006),
+// mapping each child extent to the attributes that induce it
+private LinkedHashMap<Extent,int[]> sprout(Extent C, int[] C_intent) {
+	// for each attribute (feature-value pair) that is not in the attribute 
+	// set of C, find all members of C that possess the attribute -- this 
+	// creates a 'proto-child' (empty iff no member has the attribute; 
+	// non-empty and proper because the attribute is not shared by all 
+	// members of C)
+	// then collapse (i.e., merge the attributes of) proto-children that
+	// have the same extent within C, making new concepts
+	LinkedHashMap<Extent,int[]> D = new LinkedHashMap<Extent,int[]>();
+	for (int f=0; f<nFeatures; f++) {
+		for (int v=-1; v<=1; v+=2) {
+			long[] S = new long[context.nWords];
+			if (v==C_intent[f] || !context.intersect(C.words, f, v, S))
+				continue;
+			Extent protoChild = new Extent(S);
+			int[] intent = D.get(protoChild);
+			if (intent==null) {
+				intent = new int[nFeatures];
+				D.put(protoChild, intent);
+			}
+			intent[f] = v;  // collapse (merge) attributes
 		}
 	}
 	
-	return new LinkedList<Concept>(D.values());
+	return D;
 }
 
 // returns true iff the induced attribute set of the child 
 // is 'complete' w.r.t. the parent (as in Choi \& Huang 2006)
-private boolean completeIntent(Concept child, Concept parent) {
-	int[] induced = union(child.intent,parent.intent);
-	int[] intent = intent(child.extent);
+private boolean completeIntent(Extent child, int[] child_intent, int[] parent_intent) {
+	int[] induced = union(child_intent,parent_intent);
+	int[] intent = intent(child);
 	boolean value = Arrays.equals(induced,intent);
 	//System.out.println("completeIntent? "+ child);
 	//System.out.println("induced = "+ Arrays.toString(induced));
@@ -205,58 +360,34 @@ private int[] union(int[] intent1, int[] intent2) {
 }
 
 // find attributes shared by all members of set S
-private int[] intent(BitSet S) {
+private int[] intent(Extent S) {
 	int[] intent = new int[nFeatures];
-    if (S.cardinality()==0)
+    if (S.isEmpty())
         return intent;
 
-    int v = 0; boolean first = false;
     for (int f=0; f<nFeatures; f++) {
-        v = 0; first = true;
-        for (int a=S.nextSetBit(0); a!=-1; a=S.nextSetBit(a+1)) {
-            if (first) { v = featureMatrix[a][f]; first = false; }
-            if (v==0 || featureMatrix[a][f]!=v) { v = 0; break; }
-        }
-        intent[f] = v;
+        if (context.subsetOf(S.words, f, 1))
+            intent[f] = 1;
+        else if (context.subsetOf(S.words, f, -1))
+            intent[f] = -1;
     }
 	return intent;
 }
 
-// returns true iff S1 is a subset (proper or not) of S2
-private boolean subsetOf(BitSet S1, BitSet S2) {
-	for (int i=S1.nextSetBit(0); i!=-1; i=S1.nextSetBit(i+1))
-		if (!S2.get(i)) return false;
-	return true;
-}
-
-// returns true iff child is blocked by a superset w.r.t. sigmaObserved; 
-// searches the supersets by starting at top and walking down the lattice 
-// described by succ
-private boolean blocked(BitSet child, BitSet top, HashMap<BitSet,HashSet<BitSet>> succ, BitSet sigmaObserved) {
-	LinkedHashSet<BitSet> Q = new LinkedHashSet<BitSet>();
-	Q.add(top);
-
-	BitSet tmp = new BitSet();
-	while (!Q.isEmpty()) {
-		// ancestor <- dequeue(Q)
-        BitSet ancestor = Q.iterator().next();
-        Q.remove(ancestor);
-		// if child==ancestor or ancestor is not a superset of child,
-		// then no descendent of ancestor is a superset of child
-		if (child.equals(ancestor) || !subsetOf(child,ancestor)) {
-			continue;
-		}
-		// ancestor blocks child iff
-		// (ancestor\child) \cap sigmaObserved == \emptyset
-		tmp.clear(); tmp.or(ancestor); tmp.andNot(child);
-		if (!tmp.intersects(sigmaObserved)) {
+// returns true iff child is blocked by a superset w.r.t. sigmaObserved, 
+// i.e., some proper superset of child that is linked into the lattice 
+// (and so would be reached by walking down succ from top) contains no 
+// observed segments outside of child; such a superset has the same 
+// observed segments as child, so only the extents indexed under 
+// those segments need to be checked
+private boolean blocked(Extent child, ArrayList<BitSet> observed, Extent obs) {
+	Extent obs_child = observedExtents.find(child.and(obs));
+	BitSet candidates = (obs_child==null) ? null : get(observed,obs_child.id);
+	if (candidates==null)
+		return false;
+	for (int x=candidates.nextSetBit(0); x!=-1; x=candidates.nextSetBit(x+1)) {
+		if (x!=child.id && child.subsetOf(extents.get(x)))
 			return true;
-		}
-		// enqueue the immediate descendents of ancestor 
-		// (which are identified by the succ relation)
-		if (succ.containsKey(ancestor)) {
-			Q.addAll(succ.get(ancestor));
-		}
 	}
 	return false;
 }
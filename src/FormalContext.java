@@ -0,0 +1,110 @@
+// used by FormalConceptAnalysis
+// formal context stored as one bit-packed column of segments per 
+// attribute (feature-value pair); column words follow the layout
+// of BitSet.toLongArray()
+
+package edu.jhu.features;
+
+import java.util.*;
+
+class FormalContext
+{
+public int nSegments = 0;
+public int nFeatures = 0;
+public int nWords = 0;
+public long[][] columns = null;		// columns[attribute(f,v)]: segments with value v for feature f
+
+public FormalContext(int[][] featureMatrix, int nFeatures) {
+	this.nSegments = featureMatrix.length;
+	this.nFeatures = nFeatures;
+	this.nWords = (nSegments+63) >>> 6;
+	columns = new long[2*nFeatures][nWords];
+	for (int a=0; a<nSegments; a++) {
+		if (featureMatrix[a]==null) continue;	// segment not on projection
+		for (int f=0; f<nFeatures; f++) {
+			int v = featureMatrix[a][f];
+			if (v!=0)
+				columns[attribute(f,v)][a >>> 6] |= 1L << a;
+		}
+	}
+}
+
+public FormalContext(LinkedHashMap<String,int[]> featureMatrix) {
+	this(featureMatrix.values().toArray(new int[0][]),
+		featureMatrix.values().stream().filter(x -> x!=null).findFirst().get().length);
+}
+
+public int nAttributes() {
+	return columns.length;
+}
+
+// index of the column for feature f with value v (+1 or -1)
+public static int attribute(int f, int v) {
+	return (v==1) ? 2*f : 2*f+1;
+}
+
+public long[] column(int f, int v) {
+	return columns[attribute(f,v)];
+}
+
+// packs segment set S into words of the same length as the columns
+public long[] pack(BitSet S) {
+	return Arrays.copyOf(S.toLongArray(), nWords);
+}
+
+// returns true iff every segment in S has value v for feature f
+public boolean subsetOf(long[] S, int f, int v) {
+	return subsetOf(S, attribute(f,v));
+}
+
+// returns true iff every segment in S has attribute a
+public boolean subsetOf(long[] S, int a) {
+	long[] column = columns[a];
+	for (int w=0; w<nWords; w++)
+		if ((S[w] & ~column[w])!=0L) return false;
+	return true;
+}
+
+// writes the segments in S that have value v for feature f into result;
+// returns true iff result is non-empty
+public boolean intersect(long[] S, int f, int v, long[] result) {
+	return intersect(S, attribute(f,v), result);
+}
+
+// writes the segments in S that have attribute a into result;
+// returns true iff result is non-empty
+public boolean intersect(long[] S, int a, long[] result) {
+	long[] column = columns[a];
+	long any = 0L;
+	for (int w=0; w<nWords; w++) {
+		result[w] = S[w] & column[w];
+		any |= result[w];
+	}
+	return (any!=0L);
+}
+
+// number of segments in S
+public static int cardinality(long[] S) {
+	int n = 0;
+	for (long w : S)
+		n += Long.bitCount(w);
+	return n;
+}
+
+// attributes shared by all segments in S
+public BitSet attributes(long[] S) {
+	BitSet B = new BitSet(columns.length);
+	for (int a=0; a<columns.length; a++)
+		if (subsetOf(S, a)) B.set(a);
+	return B;
+}
+
+// feature vector (-1/0/+1) of attribute set B
+public int[] features(BitSet B) {
+	int[] ftrs = new int[nFeatures];
+	for (int a=B.nextSetBit(0); a!=-1; a=B.nextSetBit(a+1))
+		ftrs[a >>> 1] = ((a & 1)==0) ? 1 : -1;
+	return ftrs;
+}
+
+}
@@ -0,0 +1,51 @@
+// Galois lattice construction with incremental closure of intents:
+//		Andrews, Simon. 2009. In-Close, a Fast Algorithm for Computing 
+//		Formal Concepts.
+
+package edu.jhu.features;
+
+import java.util.*;
+
+public class InClose extends ClosureLatticeBuilder
+{
+
+void enumerate(long[] top, BitSet intent) {
+	inClose(top, (BitSet) intent.clone(), 0);
+}
+
+// completes the intent B of extent A with the attributes from y on, 
+// then recurses on the canonical children
+private void inClose(long[] A, BitSet B, int y) {
+	ArrayList<long[]> childExtents = new ArrayList<long[]>();
+	ArrayList<Integer> childAttributes = new ArrayList<Integer>();
+	for (int j=B.nextClearBit(y); j<nAttributes; j=B.nextClearBit(j+1)) {
+		long[] C = new long[context.nWords];
+		if (!context.intersect(A, j, C))
+			continue;
+		if (Arrays.equals(C, A)) {
+			B.set(j);
+		}
+		else if (canonical(C, B, j)) {
+			childExtents.add(C);
+			childAttributes.add(j);
+		}
+	}
+	output(A, B);
+
+	for (int i=0; i<childExtents.size(); i++) {
+		int j = childAttributes.get(i);
+		BitSet D = (BitSet) B.clone();
+		D.set(j);
+		inClose(childExtents.get(i), D, j+1);
+	}
+}
+
+// returns true iff no attribute less than j and not in B
+// is shared by all segments in C
+private boolean canonical(long[] C, BitSet B, int j) {
+	for (int k=B.nextClearBit(0); k<j; k=B.nextClearBit(k+1))
+		if (context.subsetOf(C, k)) return false;
+	return true;
+}
+
+}
@@ -0,0 +1,27 @@
+// algorithms that construct a Galois lattice from a feature matrix:
+//		FormalConceptAnalysis	modified Choi & Huang (2006), with pruning
+//		NextClosure				Ganter (1984)
+//		InClose					Andrews (2009)
+//		FCbO					Outrata & Vychodil (2012)
+// The lattice is returned as a Hasse diagram: each concept is related 
+// only to its immediate successors (subsets), and a top concept with 
+// extent sigmaObserved is related to the concepts without predecessors.
+// All builders return the same lattice (concepts with non-empty extents 
+// within sigma) when sigmaObserved includes sigma, as in NaturalClasses.
+// Only FormalConceptAnalysis prunes w.r.t. a smaller set of observed 
+// segments; the other builders enumerate all concepts, as 
+// FormalConceptAnalysis does with setPrune(false).
+// Concepts can also be enumerated lazily, without links, with 
+// ConceptIterator.
+
+package edu.jhu.features;
+
+import java.util.*;
+import edu.jhu.util.*;
+
+public interface LatticeBuilder
+{
+
+public BinaryRelation<Concept> galoisLattice(LinkedHashMap<String,int[]> featureMatrix, BitSet sigma, BitSet sigmaObserved);
+
+}
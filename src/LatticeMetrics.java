@@ -0,0 +1,81 @@
+// counters and timers for one call to FormalConceptAnalysis.galoisLattice()
+// (available afterwards as FormalConceptAnalysis.metrics and, for the 
+// lattice of a set of natural classes, as NaturalClasses.metrics; also 
+// recorded as a LatticeBuildEvent when Java Flight Recorder is running)
+// Times are in nanoseconds; sprout and intent times are summed over 
+// threads when the lattice is built in parallel.
+
+package edu.jhu.features;
+
+import jdk.jfr.*;
+
+public class LatticeMetrics
+{
+
+public int nSegments            = 0;
+public int nFeatures            = 0;
+public int concepts             = 0;    // concepts in the lattice
+public int extents              = 0;    // distinct extents generated
+public int sprouts              = 0;    // concepts expanded
+public long protoChildren       = 0;    // proto-children before collapsing
+public int maxProtoChildren     = 0;    // most proto-children of one sprout
+public long children            = 0;    // children after collapsing
+public long incompleteIntents   = 0;    // children rejected by completeIntent()
+public int blocked              = 0;    // blocked extents
+public int levels               = 0;    // passes over the queue
+public int maxQueue             = 0;    // queue high-water mark
+public long sproutTime          = 0;
+public long intentTime          = 0;
+public long blockingTime        = 0;
+public long postTime            = 0;    // post-processing
+public long totalTime           = 0;
+
+public String toString() {
+    StringBuffer value = new StringBuffer();
+    value.append("segments: "+ nSegments +", features: "+ nFeatures +"\n");
+    value.append("concepts: "+ concepts +", extents: "+ extents +", blocked: "+ blocked +"\n");
+    value.append("sprouts: "+ sprouts +", proto-children: "+ protoChildren 
+        +" (max "+ maxProtoChildren +"), children: "+ children 
+        +", incomplete intents: "+ incompleteIntents +"\n");
+    value.append("levels: "+ levels +", max queue: "+ maxQueue +"\n");
+    value.append("ms sprout: "+ sproutTime/1e6 +", intent: "+ intentTime/1e6 
+        +", blocking: "+ blockingTime/1e6 +", post-processing: "+ postTime/1e6 
+        +", total: "+ totalTime/1e6);
+    return value.toString();
+}
+
+// Java Flight Recorder event with the same fields
+@Name("edu.jhu.features.LatticeBuild")
+@Label("Lattice Build")
+@Category({"Phonological Features", "Natural Classes"})
+@Description("Construction of a concept lattice by FormalConceptAnalysis")
+static class LatticeBuildEvent extends jdk.jfr.Event
+{
+    int nSegments, nFeatures, concepts, extents, sprouts, blocked, levels, maxQueue, maxProtoChildren;
+    long protoChildren, children, incompleteIntents, sproutTime, intentTime, blockingTime, postTime;
+}
+
+// records metrics as a JFR event that began at the given event's begin()
+void commit(LatticeBuildEvent event) {
+    if (!event.shouldCommit())
+        return;
+    event.nSegments = nSegments;
+    event.nFeatures = nFeatures;
+    event.concepts = concepts;
+    event.extents = extents;
+    event.sprouts = sprouts;
+    event.blocked = blocked;
+    event.levels = levels;
+    event.maxQueue = maxQueue;
+    event.maxProtoChildren = maxProtoChildren;
+    event.protoChildren = protoChildren;
+    event.children = children;
+    event.incompleteIntents = incompleteIntents;
+    event.sproutTime = sproutTime;
+    event.intentTime = intentTime;
+    event.blockingTime = blockingTime;
+    event.postTime = postTime;
+    event.commit();
+}
+
+}
@@ -33,6 +33,16 @@ public NaturalClass(Projection proj, BitSet segs, int[] ftrs, boolean complement
     this.name       = NaturalClassUtil.toString(proj, this);
 }
 
+// recompute segment array and size after segs has changed
+// (e.g., by an incremental update of the natural class lattice)
+public void refresh(Projection proj) {
+    this.segs_      = new boolean[proj.getAlphabet().nSegments];
+    for (int i=segs.nextSetBit(0); i!=-1; i=segs.nextSetBit(i+1)) {
+        this.segs_[i] = true;
+    }
+    this.size       = segs.cardinality();
+}
+
 // orders natural classes by size (larger first),
 // then by subset relation, then lexicographically
 public int compareTo(Object o) {
@@ -0,0 +1,171 @@
+// Deterministic automaton over segment ids that finds all occurrences 
+// of many natural class sequences (e.g., constraints) in one left-to-
+// right scan of a form. The nondeterministic automaton has one state 
+// (slot) for each position in each sequence; a slot is active when the 
+// classes before it have matched the preceding segments. The first 
+// slot of every sequence is always active (matches can start anywhere), 
+// and an occurrence ends whenever the last slot of a sequence becomes 
+// active. Sets of active slots are determinized by subset construction 
+// on demand, so only states reached by the scanned forms are made.
+// If a projection is given, segments that are not on the projection 
+// are skipped (as in Projection.project()).
+// note: not thread-safe (states are added during scans)
+
+package edu.jhu.features;
+
+import java.util.*;
+
+public class NaturalClassAutomaton
+{
+
+public int nSequences           = 0;
+public int nSegments            = 0;
+Projection proj                 = null;     // segments not on projection are skipped (null: none)
+int nSlots                      = 0;
+int nWords                      = 0;
+int[] sequenceOf                = null;     // sequence of each slot
+long[] initial                  = null;     // first slots of all sequences
+long[] complete                 = null;     // last slots of all sequences
+long[][] accept                 = null;     // accept[s]: slots whose natural class contains segment s
+
+ArrayList<int[]> delta          = new ArrayList<int[]>();   // transitions of each state (-1: not made yet)
+ArrayList<int[]> output         = new ArrayList<int[]>();   // sequences with an occurrence ending on entering each state
+ArrayList<long[]> states        = new ArrayList<long[]>();  // active slots of each state
+HashMap<BitSet,Integer> stateIds = new HashMap<BitSet,Integer>();
+
+public NaturalClassAutomaton(int nSegments, List<NaturalClass[]> sequences) {
+    this.nSegments = nSegments;
+    nSequences = sequences.size();
+
+    // slots of sequence X are X.length+1 consecutive bits, 
+    // the last one for completed occurrences
+    for (NaturalClass[] X : sequences)
+        nSlots += X.length+1;
+    nWords = (nSlots+63)/64;
+    sequenceOf = new int[nSlots];
+    initial = new long[nWords];
+    complete = new long[nWords];
+    accept = new long[nSegments][nWords];
+    int slot = 0;
+    for (int i=0; i<nSequences; i++) {
+        NaturalClass[] X = sequences.get(i);
+        initial[slot >>> 6] |= (1L << slot);
+        for (NaturalClass x : X) {
+            sequenceOf[slot] = i;
+            for (int s=x.segs.nextSetBit(0); s!=-1 && s<nSegments; s=x.segs.nextSetBit(s+1))
+                accept[s][slot >>> 6] |= (1L << slot);
+            slot++;
+        }
+        sequenceOf[slot] = i;
+        complete[slot >>> 6] |= (1L << slot);
+        slot++;
+    }
+
+    // start state: no slots active besides the first ones
+    state(new long[nWords]);
+}
+
+// automaton for the sequences on the given projection
+public NaturalClassAutomaton(Projection proj, List<NaturalClass[]> sequences) {
+    this(proj.getAlphabet().nSegments, sequences);
+    this.proj = proj;
+}
+
+// number of occurrences of each sequence in form
+public int[] count(int[] form) {
+    int[] counts = new int[nSequences];
+    int q = 0;
+    for (int s : form) {
+        if (skip(s)) continue;
+        q = next(q, s);
+        for (int i : output.get(q))
+            counts[i]++;
+    }
+    return counts;
+}
+
+// number of occurrences of each sequence in the corpus, weighted 
+// by the frequencies of the forms (see Corpus)
+public double[] count(Corpus corpus) {
+    double[] counts = new double[nSequences];
+    for (int j=0; j<corpus.data_size; j++) {
+        double freq = corpus.data_freq[j];
+        int q = 0;
+        for (int k=corpus.start(j); k<corpus.end(j); k++) {
+            int s = corpus.segments[k];
+            if (skip(s)) continue;
+            q = next(q, s);
+            for (int i : output.get(q))
+                counts[i] += freq;
+        }
+    }
+    return counts;
+}
+
+// does form contain an occurrence of any sequence?
+public boolean matches(int[] form) {
+    int q = 0;
+    for (int s : form) {
+        if (skip(s)) continue;
+        q = next(q, s);
+        if (output.get(q).length>0)
+            return true;
+    }
+    return false;
+}
+
+// number of states made so far
+public int size() {
+    return states.size();
+}
+
+private boolean skip(int s) {
+    return (proj!=null && (s>=proj.segmentMaskBoolean.length || !proj.segmentMaskBoolean[s]));
+}
+
+// state reached from state q on segment s
+private int next(int q, int s) {
+    if (s>=nSegments)
+        return 0;
+    int r = delta.get(q)[s];
+    if (r!=-1)
+        return r;
+    // slots after the active (or first) slots whose classes contain s
+    long[] active = states.get(q);
+    long[] A = new long[nWords];
+    long carry = 0L;
+    for (int w=0; w<nWords; w++) {
+        long matched = (active[w] | initial[w]) & accept[s][w];
+        A[w] = (matched << 1) | carry;
+        carry = matched >>> 63;
+    }
+    r = state(A);
+    delta.get(q)[s] = r;
+    return r;
+}
+
+// id of the state with active slots A, made if necessary
+private int state(long[] A) {
+    BitSet key = BitSet.valueOf(A);
+    Integer q = stateIds.get(key);
+    if (q!=null)
+        return q;
+    q = states.size();
+    stateIds.put(key, q);
+    states.add(A);
+    int[] transitions = new int[nSegments];
+    Arrays.fill(transitions, -1);
+    delta.add(transitions);
+    ArrayList<Integer> completed = new ArrayList<Integer>();
+    for (int w=0; w<nWords; w++) {
+        long c = A[w] & complete[w];
+        while (c!=0L) {
+            completed.add(sequenceOf[(w << 6) + Long.numberOfTrailingZeros(c)]);
+            c &= (c - 1);
+        }
+    }
+    output.add(completed.stream().mapToInt(i -> i).toArray());
+    return q;
+}
+
+}
@@ -0,0 +1,219 @@
+// on-disk cache of the natural classes of a projection, keyed by a 
+// fingerprint (SHA-256) of everything they are computed from: the 
+// projected feature matrix, the segment mask, the word boundaries and 
+// the complementClasses flag. A changed chart or projection has a 
+// different fingerprint and so a different file; files with another 
+// format version or fingerprint are ignored and replaced.
+// The cache is off unless a directory is given, e.g. with
+//		java -Dedu.jhu.features.cache=/tmp/nc ...
+// File format (DataOutputStream):
+//		magic, version, fingerprint,
+//		nSegments, nFeatures, 
+//		nClasses, per class: complement, ftrs, segs, diffs
+//		lattice edges, tree edges, natural class array (class indices)
+
+package edu.jhu.features;
+
+import java.io.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import edu.jhu.util.*;
+
+public class NaturalClassCache
+{
+
+public static String directory = System.getProperty("edu.jhu.features.cache");
+static final int MAGIC      = 0x4e434331;   // "NCC1"
+static final int VERSION    = 1;
+static int verbosity        = 0;
+
+// fill in natural classes from the cache; returns false if
+// the cache is off or has no (valid) entry for this projection
+public static boolean load(Projection proj, NaturalClasses C) {
+    if (directory==null)
+        return false;
+    byte[] key = fingerprint(proj);
+    File file = file(key);
+    if (!file.exists())
+        return false;
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+        if (in.readInt()!=MAGIC || in.readInt()!=VERSION)
+            return false;
+        byte[] key_ = new byte[key.length];
+        in.readFully(key_);
+        if (!Arrays.equals(key, key_))
+            return false;
+        int nFeatures = proj.getAlphabet().nFeatures;
+        if (in.readInt()!=proj.getAlphabet().nSegments || in.readInt()!=nFeatures)
+            return false;
+
+        int n = in.readInt();
+        NaturalClass[] X = new NaturalClass[n];
+        for (int i=0; i<n; i++) {
+            boolean complement = in.readBoolean();
+            int[] ftrs = new int[nFeatures];
+            for (int j=0; j<nFeatures; j++)
+                ftrs[j] = in.readByte();
+            BitSet segs = readBitSet(in);
+            X[i] = new NaturalClass(proj, segs, ftrs, complement);
+            int nDiffs = in.readInt();
+            if (nDiffs>=0) {
+                X[i].diffs = new ArrayList<BitSet>(nDiffs);
+                for (int k=0; k<nDiffs; k++)
+                    X[i].diffs.add(readBitSet(in));
+            }
+        }
+        int nLattice = in.readInt();
+        BinaryRelation<NaturalClass> lattice = new BinaryRelation<NaturalClass>();
+        for (int i=0; i<nLattice; i++)
+            lattice.add(X[in.readInt()]);
+        for (int m=in.readInt(); m>0; m--)
+            lattice.add(X[in.readInt()], X[in.readInt()]);
+        BinaryRelation<NaturalClass> tree = new BinaryRelation<NaturalClass>();
+        for (int m=in.readInt(); m>0; m--)
+            tree.add(X[in.readInt()], X[in.readInt()]);
+        NaturalClass[] naturalClasses = new NaturalClass[in.readInt()];
+        for (int i=0; i<naturalClasses.length; i++) {
+            naturalClasses[i] = X[in.readInt()];
+            naturalClasses[i].id = i;
+        }
+
+        C.naturalClassLattice   = lattice;
+        C.naturalClassTree      = tree;
+        C.naturalClasses        = naturalClasses;
+        C.nNaturalClasses       = naturalClasses.length;
+        C.indexClasses();
+        C.sigma                 = new NaturalClass(proj, (BitSet) proj.segmentMask.clone(), null, false);
+    } catch (IOException | RuntimeException e) {
+        if (verbosity>0) System.out.println("natural class cache: cannot read "+ file +" ("+ e +")");
+        return false;
+    }
+    if (verbosity>0) System.out.println("natural class cache: read "+ file);
+    return true;
+}
+
+// write natural classes to the cache (if it is on); the file is 
+// written under a temporary name and then moved into place, so 
+// concurrent readers never see a partial file
+public static void store(Projection proj, NaturalClasses C) {
+    if (directory==null)
+        return;
+    byte[] key = fingerprint(proj);
+    File file = file(key);
+    File tmp = null;
+    try {
+        Files.createDirectories(Paths.get(directory));
+        tmp = File.createTempFile(file.getName(), ".tmp", new File(directory));
+
+        // lattice classes first, then complement classes
+        ArrayList<NaturalClass> X = new ArrayList<NaturalClass>(C.naturalClassLattice.S);
+        HashMap<NaturalClass,Integer> index = new HashMap<NaturalClass,Integer>();
+        for (int i=0; i<X.size(); i++)
+            index.put(X.get(i), i);
+        int nLattice = X.size();
+        for (NaturalClass x : C.naturalClasses) {
+            if (!index.containsKey(x)) {
+                index.put(x, X.size());
+                X.add(x);
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.write(key);
+            out.writeInt(proj.getAlphabet().nSegments);
+            out.writeInt(proj.getAlphabet().nFeatures);
+
+            out.writeInt(X.size());
+            for (NaturalClass x : X) {
+                out.writeBoolean(x.complement);
+                for (int j=0; j<proj.getAlphabet().nFeatures; j++)
+                    out.writeByte(x.ftrs[j]);
+                writeBitSet(out, x.segs);
+                out.writeInt((x.diffs==null) ? -1 : x.diffs.size());
+                if (x.diffs!=null)
+                    for (BitSet diff : x.diffs)
+                        writeBitSet(out, diff);
+            }
+            out.writeInt(nLattice);
+            for (int i=0; i<nLattice; i++)
+                out.writeInt(i);
+            writeEdges(out, C.naturalClassLattice, index);
+            writeEdges(out, C.naturalClassTree, index);
+            out.writeInt(C.nNaturalClasses);
+            for (NaturalClass x : C.naturalClasses)
+                out.writeInt(index.get(x));
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+        if (verbosity>0) System.out.println("natural class cache: cannot write "+ file +" ("+ e +")");
+        if (tmp!=null) tmp.delete();
+        return;
+    }
+    if (verbosity>0) System.out.println("natural class cache: wrote "+ file);
+}
+
+// SHA-256 of the inputs to natural class construction on a projection
+public static byte[] fingerprint(Projection proj) {
+    try {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        DataOutputStream out = new DataOutputStream(new DigestOutputStream(OutputStream.nullOutputStream(), md));
+        Alphabet A = proj.getAlphabet();
+        out.writeInt(VERSION);
+        out.writeInt(A.nSegments);
+        out.writeInt(A.nFeatures);
+        out.writeInt(A.syms.wordBegin());
+        out.writeInt(A.syms.wordEnd());
+        out.writeBoolean(proj.complementClasses);
+        writeBitSet(out, proj.segmentMask);
+        for (int i=0; i<A.nSegments; i++) {
+            boolean projected = proj.segmentMask.get(i);
+            out.writeBoolean(projected);
+            if (projected)
+                for (int f=0; f<A.nFeatures; f++) out.writeByte(proj.feature(i, f));
+        }
+        out.flush();
+        return md.digest();
+    } catch (NoSuchAlgorithmException | IOException e) {
+        throw new RuntimeException(e);
+    }
+}
+
+static File file(byte[] key) {
+    StringBuffer name = new StringBuffer();
+    for (byte b : key)
+        name.append(String.format("%02x", b));
+    name.append(".nc");
+    return new File(directory, name.toString());
+}
+
+static void writeBitSet(DataOutputStream out, BitSet S) throws IOException {
+    long[] words = S.toLongArray();
+    out.writeInt(words.length);
+    for (long w : words)
+        out.writeLong(w);
+}
+
+static BitSet readBitSet(DataInputStream in) throws IOException {
+    long[] words = new long[in.readInt()];
+    for (int i=0; i<words.length; i++)
+        words[i] = in.readLong();
+    return BitSet.valueOf(words);
+}
+
+static void writeEdges(DataOutputStream out, BinaryRelation<NaturalClass> R, HashMap<NaturalClass,Integer> index) throws IOException {
+    int m = 0;
+    for (NaturalClass x : R.S)
+        m += R.get(x).size();
+    out.writeInt(m);
+    for (NaturalClass x : R.S) {
+        for (NaturalClass y : R.get(x)) {
+            out.writeInt(index.get(x));
+            out.writeInt(index.get(y));
+        }
+    }
+}
+
+}
@@ -0,0 +1,127 @@
+// registry that shares natural classes between projections with 
+// equivalent contexts: the same alphabet, segment mask and 
+// complementClasses setting, and the same projected feature values 
+// once features that are constant on the projected segments are 
+// ignored (such features are in the intent of every concept, so they 
+// change neither the lattice nor the minimal features of any class)
+// Shared natural classes must not be modified; Projection rebuilds 
+// its own natural classes instead of updating shared ones (see 
+// Projection.addSegment() and Projection.addFeature()).
+// The registry is off unless enabled is set; entries are dropped 
+// when their alphabet is no longer in use.
+
+package edu.jhu.features;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+public class NaturalClassRegistry
+{
+
+public static boolean enabled = false;
+static WeakHashMap<Alphabet,HashMap<Context,FutureTask<NaturalClasses>>> registry
+    = new WeakHashMap<Alphabet,HashMap<Context,FutureTask<NaturalClasses>>>();
+static int verbosity = 0;
+
+// canonical context of a projection
+static class Context
+{
+    boolean complementClasses;
+    int[][] rows;       // projected features of each segment (null if not projected), constant features zeroed
+    int hash;
+
+    Context(Projection proj) {
+        complementClasses = proj.complementClasses;
+        rows = new int[proj.getAlphabet().nSegments][];
+        for (int i=0; i<rows.length; i++)
+            rows[i] = proj.features(i);
+
+        // zero out features that have the same value for all projected segments
+        int[] first = null;
+        for (int[] ftrs : rows)
+            if (ftrs!=null) { first = ftrs; break; }
+        if (first!=null) {
+            for (int f=0; f<first.length; f++) {
+                boolean constant = true;
+                for (int[] ftrs : rows) {
+                    if (ftrs!=null && ftrs[f]!=first[f]) {
+                        constant = false;
+                        break;
+                    }
+                }
+                if (!constant) continue;
+                for (int[] ftrs : rows)
+                    if (ftrs!=null) ftrs[f] = 0;
+            }
+        }
+        hash = 31*Arrays.deepHashCode(rows) + (complementClasses ? 1 : 0);
+    }
+
+    public int hashCode() {
+        return hash;
+    }
+
+    public boolean equals(Object o) {
+        if (o==this) return true;
+        if (!(o instanceof Context)) return false;
+        Context x = (Context) o;
+        return (hash==x.hash && complementClasses==x.complementClasses && Arrays.deepEquals(rows, x.rows));
+    }
+}
+
+// natural classes for the projection, shared with all projections 
+// that have an equivalent context; they are built once, by the first 
+// caller, while other callers for the same context wait
+public static NaturalClasses get(Projection proj) {
+    Context key = new Context(proj);
+    FutureTask<NaturalClasses> task = null;
+    boolean owner = false;
+    synchronized (registry) {
+        HashMap<Context,FutureTask<NaturalClasses>> contexts = registry.get(proj.getAlphabet());
+        if (contexts==null) {
+            contexts = new HashMap<Context,FutureTask<NaturalClasses>>();
+            registry.put(proj.getAlphabet(), contexts);
+        }
+        task = contexts.get(key);
+        if (task==null) {
+            task = new FutureTask<NaturalClasses>(() -> {
+                NaturalClasses C = new NaturalClasses(proj);
+                C.shared = true;
+                return C;
+            });
+            contexts.put(key, task);
+            owner = true;
+        }
+    }
+    if (owner)
+        task.run();
+    else if (verbosity>0)
+        System.out.println("sharing natural classes of projection "+ proj.name);
+    try {
+        return task.get();
+    } catch (InterruptedException | ExecutionException e) {
+        if (owner) {
+            synchronized (registry) {
+                registry.get(proj.getAlphabet()).remove(key);
+            }
+        }
+        throw new RuntimeException(e);
+    }
+}
+
+// number of distinct contexts registered for the alphabet
+public static int size(Alphabet A) {
+    synchronized (registry) {
+        HashMap<Context,FutureTask<NaturalClasses>> contexts = registry.get(A);
+        return (contexts==null) ? 0 : contexts.size();
+    }
+}
+
+// remove all entries
+public static void clear() {
+    synchronized (registry) {
+        registry.clear();
+    }
+}
+
+}
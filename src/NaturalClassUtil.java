@@ -17,13 +17,40 @@ public static int[] minimalFeatures(Projection proj, NaturalClass x) {
 }
 
 public static int[] minimalFeatures(Projection proj, BitSet segs, int[] ftrs) {
-    BitSet segs_reduced = null;
+    return minimalFeatures(proj, proj.attributeSegments(), segs, ftrs);
+}
+
+// minimal feature representations of many segment sets (with 
+// feature specifications ftrs.get(i) for segs.get(i)) in one pass 
+// over the same attribute columns, using the given number of threads 
+// (see Pools)
+public static int[][] minimalFeatures(Projection proj, List<BitSet> segs, List<int[]> ftrs, int parallelism) {
+    BitSet[] columns = proj.attributeSegments();
+    if (parallelism<=1)
+        return IntStream.range(0, segs.size())
+            .mapToObj(i -> minimalFeatures(proj, columns, segs.get(i), ftrs.get(i)))
+            .toArray(int[][]::new);
+    return Pools.invoke(parallelism, () -> IntStream.range(0, segs.size()).parallel()
+        .mapToObj(i -> minimalFeatures(proj, columns, segs.get(i), ftrs.get(i)))
+        .toArray(int[][]::new)
+    );
+}
+
+// removes specifications, from the last feature to the first, that 
+// are not needed to pick out segs; as the denotation of the remaining 
+// specifications always contains segs, a specification is needed iff 
+// without it the denotation has segments outside of segs
+private static int[] minimalFeatures(Projection proj, BitSet[] columns, BitSet segs, int[] ftrs) {
     int[] ftrs_reduced = Arrays.copyOf(ftrs, ftrs.length);
     int n = ftrs_reduced.length;
+    BitSet segs_reduced = new BitSet();
     for (int i=(n-1); i>=0; i--) {
         if (ftrs_reduced[i]==0) continue;
         ftrs_reduced[i] = 0;
-        segs_reduced = denotation(proj, ftrs_reduced);
+        segs_reduced.clear();
+        segs_reduced.or(proj.segmentMask);
+        for (int j=0; j<n && !segs_reduced.isEmpty(); j++)
+            if (ftrs_reduced[j]!=0) segs_reduced.and(columns[FormalContext.attribute(j, ftrs_reduced[j])]);
         if (!segs_reduced.equals(segs)) {
             ftrs_reduced[i] = ftrs[i];
         }
@@ -31,22 +58,31 @@ public static int[] minimalFeatures(Projection proj, BitSet segs, int[] ftrs) {
     return ftrs_reduced;
 }
 
+// features shared by all segments in segment set on specified projection
+// (minimal generalization of the packed features of the segments)
+public static int[] intent(Projection proj, BitSet segs) {
+    long[][] rows = proj.packedFeatures();
+    long[] ftrs = null;
+    for (int i=segs.nextSetBit(0); i!=-1; i=segs.nextSetBit(i+1)) {
+        ftrs = (ftrs==null) ? Arrays.copyOf(rows[i], rows[i].length)
+                            : FeatureUtil.minimalGeneralization(ftrs, rows[i]);
+    }
+    int n = proj.getAlphabet().nFeatures;
+    return (ftrs==null) ? new int[n] : FeatureUtil.unpack(ftrs, n);
+}
+
 // convert feature vector to segment set on specified projection
 public static BitSet denotation(Projection proj, int[] ftrs) {
     return denotation(proj, ftrs, false);
 }
 
 // convert feature vector (possibly complemented) to segment set on specified projection
+// (intersection of the projected segments with each specified attribute)
 public static BitSet denotation(Projection proj, int[] ftrs, boolean complement) {
-    Alphabet A       = proj.getAlphabet();
-    SymbolTable syms = A.syms;
-    BitSet segs      = new BitSet(A.nSegments);
-    int[] ftrs_i     = null;
-    for (int i=proj.segmentMask.nextSetBit(0); i!=-1; i=proj.segmentMask.nextSetBit(i+1)) {
-        ftrs_i = proj.featureMatrix.get( syms.get(i) );
-        if (FeatureUtil.subsumes(ftrs, ftrs_i))
-            segs.set(i);
-    }
+    BitSet[] columns = proj.attributeSegments();
+    BitSet segs      = (BitSet) proj.segmentMask.clone();
+    for (int f=0; f<ftrs.length; f++)
+        if (ftrs[f]!=0) segs.and(columns[FormalContext.attribute(f, ftrs[f])]);
     if (complement)
         segs.flip(0, segs.size());
     if (proj.segmentMask!=null)
@@ -60,6 +96,7 @@ public static BitSet denotation(Projection proj, int[] ftrs, boolean complement)
 // is at least one member of segs in the set (X-Y), 
 // i.e., for all such X: (X-Y) \intersect segs \neq \emptyset
 // Note that the differences (X-Y) are precomputed as Y.diffs
+// (see NaturalClasses.closed() to test all classes at once)
 public static boolean closed(NaturalClass x, BitSet segs) {
     ArrayList<BitSet> diffs = x.diffs;
 	if (diffs==null || diffs.isEmpty()) return true;
@@ -114,36 +151,90 @@ public static String toString(Projection proj, NaturalClass[] X) {
 
 // convert string to natural class (inverse of toString())
 public static NaturalClass fromString(Projection proj, String s) {
+    // strings that denote natural classes of the projection (which are 
+    // shared anyway) are parsed once per projection, until it changes; 
+    // other classes (ad-hoc classes, and classes on a projection without 
+    // natural classes) are made anew on each call, as callers own them
+    NaturalClass x = proj.expressions.get(s);
+    if (x==null) {
+        x = parse(proj, s);
+        if (x!=null && owned(proj, x))
+            proj.expressions.put(s, x);
+    }
+    return x;
+}
+
+// is x one of the natural classes of the projection?
+private static boolean owned(Projection proj, NaturalClass x) {
+    NaturalClasses C = proj.naturalClasses;
+    return (C!=null && x.id>=0 && x.id<C.nNaturalClasses && C.naturalClasses[x.id]==x);
+}
+
+// parse string in one of the formats of fromString(), 
+// ignoring spaces:
+//      {seg1,seg2,...}     ad-hoc class for arbitrary segment set
+//      (seg1|seg2|...)     natural class with the segment set
+//      [+ftr1,-ftr2,...]   natural class with the feature specifications
+//      [^+ftr1,-ftr2,...]  complement of the above
+private static NaturalClass parse(Projection proj, String s) {
     Alphabet A = proj.getAlphabet();
+    ArrayList<String> items = new ArrayList<String>();
+    StringBuffer item = new StringBuffer();
+    char open = 0;
+    boolean complement = false;
+    for (int i=0; i<s.length(); i++) {
+        char c = s.charAt(i);
+        if (c==' ') continue;
+        if (open==0 && (c=='{' || c=='(' || c=='[')) {
+            open = c;
+        } else if (open=='[' && c=='^' && items.isEmpty() && item.length()==0) {
+            complement = true;
+        } else if (c==',' || c=='|' || c=='}' || c==')' || c==']') {
+            if (item.length()>0) items.add(item.toString());
+            item.setLength(0);
+        } else {
+            item.append(c);
+        }
+    }
+    if (item.length()>0) items.add(item.toString());
 
     // special case: ad-hoc class for arbitrary segment set
 	// todo: verify that all segments in the set are on the projection
-    if (s.startsWith("{")) {
+    if (open=='{') {
         BitSet segs = new BitSet(A.nSegments);
-        s = s.replaceAll("[{} ]", "");
-        for (String seg : s.split(",")) {
+        for (String seg : items)
             segs.set(A.syms.get(seg));
-        }
         return new NaturalClass(proj, segs, null, false);
     }
-    
+
     // special case: regular expression with segment symbols
-    if (s.startsWith("(")) {
+    if (open=='(') {
         BitSet segs = new BitSet(A.nSegments);
-        s = s.replaceAll("[() ]", "");
-        for (String seg : s.split("[|]"))
+        for (String seg : items)
             segs.set(A.syms.get(seg));
-        return proj.naturalClasses.get(segs);
+        return proj.getNaturalClasses().get(segs);
     }
 
     // general case
-    int[] ftrs = FeatureUtil.fromString(A, s);
-    boolean complement = s.startsWith("\\[^");
+    int[] ftrs = new int[A.nFeatures];
+    for (String fv : items) {
+        String ftr = fv.substring(1);
+        char val = fv.charAt(0);
+        int j = A.featureIndex(ftr);
+        if (j==-1)
+            throw new IllegalArgumentException("unknown feature "+ ftr +" in natural class "+ s);
+        ftrs[j] = (val=='+') ? 1 : (val=='-') ? -1 : 0;
+    }
     BitSet segs = denotation(proj, ftrs, complement);
-    if (proj.naturalClasses!=null) {
-        return proj.naturalClasses.get(segs);
+    if (complement) {
+        // complement classes exclude word boundaries (see NaturalClasses)
+        segs.clear(A.syms.wordBegin());
+        segs.clear(A.syms.wordEnd());
+    }
+    NaturalClasses C = proj.getNaturalClasses();
+    if (C!=null) {
+        return C.get(segs);
     }
-    NaturalClass x = new NaturalClass(proj, segs, ftrs, complement);
     return new NaturalClass(proj, segs, ftrs, complement);
 }
 
@@ -14,30 +14,75 @@ public BinaryRelation<NaturalClass> naturalClassLattice	= null;		// lattice of n
 public BinaryRelation<NaturalClass> naturalClassTree	= null;		// rooted tree of natural classes
 public NaturalClass[] naturalClasses					= null;		// array of natural classes
 public NaturalClass sigma                               = null;     // natural class containing all segments
-public boolean[][] naturalClassReln                     = null;     // subset relation on natural classes
+public BitSet[] naturalClassReln                        = null;     // subset relation on natural classes, by id (see isSubclass())
+BitSet[] naturalClassRelnInv                            = null;     // inverse of naturalClassReln
 public int nNaturalClasses                              = 0;
+ConceptLattice conceptLattice                           = null;     // concept lattice, kept for incremental updates
+HashMap<ConceptLattice.Node,NaturalClass> nodeToClass   = null;     // natural class of each concept
+HashMap<BitSet,NaturalClass> segsToClass                = null;     // natural class of each segment set (see get())
+boolean shared                                          = false;    // shared between projections? (see NaturalClassRegistry)
+int diffWords                                           = 0;        // words per packed segment set in diffs
+long[] diffs                                            = null;     // diffs of all natural classes, packed contiguously (see closed())
+int[] diffOffsets                                       = null;     // diffs of class id are diffOffsets[id] ... diffOffsets[id+1]-1
+
+int threads                                             = 1;        // number of threads used to build these natural classes
+public LatticeMetrics metrics                           = null;     // metrics of the lattice construction (null if the builder
+                                                                    // does not record them or the classes were loaded from the cache)
 
 int verbosity = 10;
+public static int parallelism = 1;  // default number of threads used to build lattices (<1: all processors)
 
 public NaturalClasses(Projection proj) {
-    // make concept lattice, apply transitive reduction
+    this(proj, parallelism);
+}
+
+public NaturalClasses(Projection proj, int parallelism) {
+    this(proj, new FormalConceptAnalysis(parallelism), parallelism);
+}
+
+// natural classes built with the given lattice construction algorithm
+// (e.g., new FCbO(); all algorithms give the same natural classes)
+public NaturalClasses(Projection proj, LatticeBuilder builder) {
+    this(proj, builder, parallelism);
+}
+
+// natural classes built with the given lattice construction algorithm, 
+// using the given number of threads outside of the builder (<1: all 
+// processors)
+public NaturalClasses(Projection proj, LatticeBuilder builder, int parallelism) {
+    threads = (parallelism<1) ?
+        Runtime.getRuntime().availableProcessors() : parallelism;
+    // reuse natural classes computed (by any process) for the same
+    // feature matrix, segment mask, and complementation
+    if (NaturalClassCache.load(proj, this))
+        return;
+
+    // make concept lattice (Hasse diagram)
     BitSet segsInContext = (BitSet) proj.segmentMask.clone();
     BinaryRelation<Concept> conceptLattice =
-        (new FormalConceptAnalysis()).galoisLattice(
-            proj.featureMatrix,
+        builder.galoisLattice(
+            proj.featureMatrix(),
             proj.segmentMask,
             segsInContext
         );
-    conceptLattice = conceptLattice.transitiveReduction();
+    if (builder instanceof FormalConceptAnalysis)
+        metrics = ((FormalConceptAnalysis) builder).metrics;
 
     // convert concept lattice to natural class lattice
+    // (all concepts are kept, including a top concept without successors)
+    // (minimal features of all concepts are found in one batch)
     HashMap<Concept,NaturalClass> M = new HashMap<Concept,NaturalClass>();
-    for (Concept x : conceptLattice.S) {
-        BitSet segs = x.extent;
-        int[] ftrs = NaturalClassUtil.minimalFeatures(proj, x.extent, x.intent);
-        M.put(x, new NaturalClass(proj, segs, ftrs, false));
-    }
     naturalClassLattice = new BinaryRelation<NaturalClass>();
+    List<Concept> concepts = new ArrayList<Concept>(conceptLattice.S);
+    int[][] minimalFtrs = NaturalClassUtil.minimalFeatures(proj,
+        concepts.stream().map(x -> x.extent).collect(Collectors.toList()),
+        concepts.stream().map(x -> x.intent).collect(Collectors.toList()),
+        threads);
+    for (int i=0; i<concepts.size(); i++) {
+        Concept x = concepts.get(i);
+        M.put(x, new NaturalClass(proj, x.extent, minimalFtrs[i], false));
+        naturalClassLattice.add(M.get(x));
+    }
     for (Concept x : conceptLattice.S) {
         for (Concept y : conceptLattice.get(x)) {
             NaturalClass cx = M.get(x);
@@ -54,6 +99,13 @@ public NaturalClasses(Projection proj) {
         }
     }
     
+    index(proj);
+    NaturalClassCache.store(proj, this);
+}
+
+// make tree and complement classes from the natural class
+// lattice, assign ids, make natural class array
+private void index(Projection proj) {
     // convert natural class lattice to tree
     BinaryRelation<NaturalClass> naturalClassLatticeRev
         = new BinaryRelation<NaturalClass>();
@@ -61,8 +113,7 @@ public NaturalClasses(Projection proj) {
         for (NaturalClass y : naturalClassLattice.get(x))
             naturalClassLatticeRev.add(y,x);
 
-    BinaryRelation<NaturalClass> naturalClassTree
-        = new BinaryRelation<NaturalClass>();
+    naturalClassTree = new BinaryRelation<NaturalClass>();
     for (NaturalClass y : naturalClassLattice.S) {
         HashSet<NaturalClass> superClassesOf_y
             = naturalClassLatticeRev.get(y);
@@ -101,20 +152,251 @@ public NaturalClasses(Projection proj) {
         naturalClasses[i] = L.get(i);
         naturalClasses[i].id = i;
     }
+    indexClasses();
     
     // make natural class containing all segments
     sigma = new NaturalClass(proj, (BitSet) proj.segmentMask.clone(), null, false);
 }
 
+// index the natural class array (after ids are assigned); 
+// remade whenever the classes change
+void indexClasses() {
+    // map segment sets to natural classes (the first in the array, 
+    // if more than one); keys are the segs of the classes themselves
+    segsToClass = new HashMap<BitSet,NaturalClass>(2*nNaturalClasses);
+    for (NaturalClass x : naturalClasses)
+        segsToClass.putIfAbsent(x.segs, x);
+
+    // subset relation: the superclasses of x are the classes that 
+    // contain every segment of x, i.e. the intersection over x.segs 
+    // of the sets of classes containing each segment
+    HashMap<Integer,BitSet> classesOf = new HashMap<Integer,BitSet>();
+    for (NaturalClass x : naturalClasses) {
+        for (int i=x.segs.nextSetBit(0); i!=-1; i=x.segs.nextSetBit(i+1)) {
+            BitSet classes = classesOf.get(i);
+            if (classes==null) {
+                classes = new BitSet(nNaturalClasses);
+                classesOf.put(i, classes);
+            }
+            classes.set(x.id);
+        }
+    }
+    naturalClassReln = new BitSet[nNaturalClasses];
+    naturalClassRelnInv = new BitSet[nNaturalClasses];
+    for (int id=0; id<nNaturalClasses; id++)
+        naturalClassRelnInv[id] = new BitSet(nNaturalClasses);
+    for (NaturalClass x : naturalClasses) {
+        BitSet superclasses = new BitSet(nNaturalClasses);
+        superclasses.set(0, nNaturalClasses);
+        for (int i=x.segs.nextSetBit(0); i!=-1; i=x.segs.nextSetBit(i+1))
+            superclasses.and(classesOf.get(i));
+        naturalClassReln[x.id] = superclasses;
+        for (int id=superclasses.nextSetBit(0); id!=-1; id=superclasses.nextSetBit(id+1))
+            naturalClassRelnInv[id].set(x.id);
+    }
+
+    // flattened diffs (see closed()): diff k of all classes is stored 
+    // in words diffs[k*diffWords] ... diffs[(k+1)*diffWords-1]
+    int nSegments = 0;
+    int nDiffs = 0;
+    for (NaturalClass x : naturalClasses) {
+        nSegments = Math.max(nSegments, x.segs.length());
+        if (x.diffs!=null) {
+            nDiffs += x.diffs.size();
+            for (BitSet diff : x.diffs)
+                nSegments = Math.max(nSegments, diff.length());
+        }
+    }
+    diffWords = Math.max((nSegments+63)/64, 1);
+    diffs = new long[nDiffs*diffWords];
+    diffOffsets = new int[nNaturalClasses+1];
+    int k = 0;
+    for (NaturalClass x : naturalClasses) {
+        diffOffsets[x.id] = k;
+        if (x.diffs!=null) {
+            for (BitSet diff : x.diffs) {
+                long[] words = diff.toLongArray();
+                System.arraycopy(words, 0, diffs, k*diffWords, words.length);
+                k++;
+            }
+        }
+    }
+    diffOffsets[nNaturalClasses] = k;
+}
+
+// ids of the natural classes that are closed w.r.t. the segment set
+// (as in NaturalClassUtil.closed(), for all classes at once)
+public BitSet closed(BitSet segs) {
+    return closed(new BitSet[] { segs })[0];
+}
+
+// ids of the natural classes that are closed w.r.t. each segment set
+public BitSet[] closed(BitSet[] S) {
+    int n = S.length;
+    long[][] words = new long[n][];
+    BitSet[] value = new BitSet[n];
+    for (int q=0; q<n; q++) {
+        words[q] = Arrays.copyOf(S[q].toLongArray(), diffWords);
+        value[q] = new BitSet(nNaturalClasses);
+        value[q].set(0, nNaturalClasses);
+    }
+    // a class is not closed w.r.t. segs if one of its diffs
+    // does not intersect segs
+    for (int id=0; id<nNaturalClasses; id++) {
+        for (int k=diffOffsets[id]; k<diffOffsets[id+1]; k++) {
+            int offset = k*diffWords;
+            for (int q=0; q<n; q++) {
+                if (!value[q].get(id))
+                    continue;
+                long any = 0L;
+                for (int w=0; w<diffWords; w++)
+                    any |= (diffs[offset+w] & words[q][w]);
+                if (any==0L)
+                    value[q].clear(id);
+            }
+        }
+    }
+    return value;
+}
+
+// is natural class i a subset of natural class j?
+public boolean isSubclass(int i, int j) {
+    return naturalClassReln[i].get(j);
+}
+
+// ids of the natural classes that contain natural class i (including 
+// i itself); the returned row is shared and must not be modified
+public BitSet superclassesOf(int i) {
+    return naturalClassReln[i];
+}
+
+// ids of the natural classes contained in natural class i (including 
+// i itself); the returned row is shared and must not be modified
+public BitSet subclassesOf(int i) {
+    return naturalClassRelnInv[i];
+}
+
+
+// incremental updates (see ConceptLattice)
+
+// update natural classes after segment seg has been added to the 
+// alphabet and projection (see Projection.addSegment)
+public void addSegment(Projection proj, int seg) {
+    if (proj.segmentMask.get(seg)) {
+        int[] ftrs = proj.features(seg);
+        ConceptLattice.Update update = conceptLattice(proj).addObject(seg, ftrs);
+        HashSet<ConceptLattice.Node> changed
+            = new HashSet<ConceptLattice.Node>(update.created);
+        changed.addAll(update.modified);
+
+        // minimal features of the other classes must now exclude seg
+        for (ConceptLattice.Node n : conceptLattice.nodes) {
+            NaturalClass x = nodeToClass.get(n);
+            if (x==null || changed.contains(n) || !FeatureUtil.subsumes(x.ftrs, ftrs))
+                continue;
+            x.ftrs = NaturalClassUtil.minimalFeatures(proj, x.segs, n.concept.intent);
+            x.name = NaturalClassUtil.toString(proj, x);
+        }
+
+        // differences with dominating classes change for new and relinked
+        // classes and for the children of classes that now contain seg
+        HashSet<ConceptLattice.Node> rediff
+            = new HashSet<ConceptLattice.Node>(update.relinked);
+        rediff.addAll(update.created);
+        for (ConceptLattice.Node n : update.modified)
+            rediff.addAll(n.children);
+        update(proj, update, rediff);
+    }
+
+    // segment arrays are sized by the alphabet
+    for (NaturalClass x : naturalClassLattice.S)
+        x.refresh(proj);
+    index(proj);
+}
+
+// update natural classes after feature f has been added
+// to the projection (see Projection.addFeature)
+public void addFeature(Projection proj, int f) {
+    ConceptLattice lattice = conceptLattice(proj);
+    BitSet[] columns = proj.attributeSegments();
+    for (int v=-1; v<=1; v+=2) {
+        BitSet column = columns[FormalContext.attribute(f, v)];
+        ConceptLattice.Update update = lattice.addAttribute(f, v, column);
+        // extents are unchanged, but the minimal features of
+        // classes that gained (f,v) can change
+        for (ConceptLattice.Node n : update.modified) {
+            NaturalClass x = nodeToClass.get(n);
+            x.ftrs = NaturalClassUtil.minimalFeatures(proj, x.segs, n.concept.intent);
+            x.name = NaturalClassUtil.toString(proj, x);
+        }
+        HashSet<ConceptLattice.Node> rediff
+            = new HashSet<ConceptLattice.Node>(update.relinked);
+        rediff.addAll(update.created);
+        update(proj, update, rediff);
+    }
+    index(proj);
+}
+
+// make classes for new concepts, recompute differences of the
+// given classes, and remake the natural class lattice
+private void update(Projection proj, ConceptLattice.Update update, HashSet<ConceptLattice.Node> rediff) {
+    for (ConceptLattice.Node n : update.created) {
+        Concept x = n.concept;
+        int[] ftrs = NaturalClassUtil.minimalFeatures(proj, x.extent, x.intent);
+        nodeToClass.put(n, new NaturalClass(proj, x.extent, ftrs, false));
+    }
+    for (ConceptLattice.Node n : update.modified) {
+        nodeToClass.get(n).refresh(proj);
+    }
+    for (ConceptLattice.Node n : rediff) {
+        NaturalClass y = nodeToClass.get(n);
+        y.diffs = null;
+        for (ConceptLattice.Node m : n.parents) {
+            if (y.diffs==null)
+                y.diffs = new ArrayList<BitSet>();
+            BitSet xydiff = (BitSet) nodeToClass.get(m).segs.clone();
+            xydiff.andNot(y.segs);
+            y.diffs.add(xydiff);
+        }
+    }
+    naturalClassLattice = new BinaryRelation<NaturalClass>();
+    for (ConceptLattice.Node n : conceptLattice.nodes) {
+        NaturalClass x = nodeToClass.get(n);
+        naturalClassLattice.add(x);
+        for (ConceptLattice.Node m : n.children)
+            naturalClassLattice.add(x, nodeToClass.get(m));
+    }
+}
+
+// concept lattice underlying the natural class lattice, made on
+// first use; concept extents are shared with the natural classes
+private ConceptLattice conceptLattice(Projection proj) {
+    if (conceptLattice!=null)
+        return conceptLattice;
+    HashMap<NaturalClass,Concept> M = new HashMap<NaturalClass,Concept>();
+    HashMap<Concept,NaturalClass> Minv = new HashMap<Concept,NaturalClass>();
+    BinaryRelation<Concept> hasse = new BinaryRelation<Concept>();
+    for (NaturalClass x : naturalClassLattice.S) {
+        Concept cx = new Concept(x.segs, NaturalClassUtil.intent(proj, x.segs));
+        M.put(x, cx);
+        Minv.put(cx, x);
+        hasse.add(cx);
+    }
+    for (NaturalClass x : naturalClassLattice.S)
+        for (NaturalClass y : naturalClassLattice.get(x))
+            hasse.add(M.get(x), M.get(y));
+    conceptLattice = new ConceptLattice(hasse);
+    nodeToClass = new HashMap<ConceptLattice.Node,NaturalClass>();
+    for (ConceptLattice.Node n : conceptLattice.nodes)
+        nodeToClass.put(n, Minv.get(n.concept));
+    return conceptLattice;
+}
 
 // convenenience functions mapping segment sets / strings to natural classes
 
 // find natural class matching segment set
 public NaturalClass get(BitSet segs) {
-    for (NaturalClass x : naturalClasses) {
-        if (x.segs.equals(segs)) return x;
-    }
-    return null;
+    return segsToClass.get(segs);
 }
 
 // find sequence of natural classes matching segment sets
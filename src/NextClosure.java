@@ -0,0 +1,58 @@
+// Galois lattice construction by enumerating closed attribute sets
+// in lectic order:
+//		Ganter, Bernhard. 1984. Two Basic Algorithms in Concept Analysis.
+
+package edu.jhu.features;
+
+import java.util.*;
+
+public class NextClosure extends ClosureLatticeBuilder
+{
+
+void enumerate(long[] top, BitSet intent) {
+	long[] A = top;
+	BitSet B = intent;
+	int nWords = context.nWords;
+	// prefix[i] = extent of the attributes in B less than i
+	long[][] prefix = new long[nAttributes+1][];
+	while (true) {
+		output(A, B);
+
+		prefix[0] = top;
+		for (int i=0; i<nAttributes; i++) {
+			if (B.get(i)) {
+				prefix[i+1] = new long[nWords];
+				context.intersect(prefix[i], i, prefix[i+1]);
+			} else {
+				prefix[i+1] = prefix[i];
+			}
+		}
+
+		// next closed set: the closure of (B \cap {0..i-1}) + i for the 
+		// largest i not in B such that the closure adds no attribute 
+		// less than i
+		long[] C = new long[nWords];
+		int next = -1;
+		for (int i=nAttributes-1; i>=0 && next==-1; i--) {
+			if (B.get(i)) continue;
+			if (!context.intersect(prefix[i], i, C)) {
+				// closure is the set of all attributes (empty extent), 
+				// which is lectically last
+				if (B.nextClearBit(0)>=i) return;
+				continue;
+			}
+			next = i;
+			for (int k=B.nextClearBit(0); k<i; k=B.nextClearBit(k+1)) {
+				if (context.subsetOf(C, k)) {
+					next = -1;
+					break;
+				}
+			}
+		}
+		if (next==-1) return;
+		A = C;
+		B = context.attributes(C);
+	}
+}
+
+}
@@ -0,0 +1,33 @@
+// Shared fork/join pools, one for each number of threads, so that 
+// lattice builders do not make (and shut down) a pool for each 
+// lattice. Work submitted from a thread that already belongs to a 
+// fork/join pool (e.g., while Projection.build() makes projections 
+// concurrently) runs in that pool instead, so that concurrent builds 
+// share its threads rather than each adding as many of their own. 
+// The worker threads are daemon threads and end when they are idle, 
+// so the pools are never shut down.
+
+package edu.jhu.features;
+
+import java.util.concurrent.*;
+import java.util.function.*;
+
+class Pools
+{
+
+static ConcurrentHashMap<Integer,ForkJoinPool> pools = new ConcurrentHashMap<Integer,ForkJoinPool>();
+
+// runs task (which may use parallel streams) with the given number 
+// of threads and returns its result
+static <T> T invoke(int parallelism, Supplier<T> task) {
+    if (parallelism<=1 || ForkJoinTask.inForkJoinPool())
+        return task.get();
+    ForkJoinPool pool = pools.computeIfAbsent(parallelism, ForkJoinPool::new);
+    try {
+        return pool.submit(task::get).get();
+    } catch (InterruptedException | ExecutionException e) {
+        throw new RuntimeException(e);
+    }
+}
+
+}
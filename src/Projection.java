@@ -1,6 +1,8 @@
 package edu.jhu.features;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.util.stream.*;
 import edu.jhu.util.*;
 
@@ -18,10 +20,18 @@ public int minConLength                 = 0;     // min length of constraints al
 public int maxConLength                 = 0;     // max length of constraints allowed on this projection
 public int maxWordLength                = 0;     // max length of words indexed on this projection
 public boolean complementClasses        = false; // are complement classes allowed on this projection?
-public LinkedHashMap<String, int[]> featureMatrix = null;
-                            // segments with features represented on this projection (other features zeroed out)
-
-public NaturalClasses naturalClasses    = null; // natural classes on this projection
+private volatile LinkedHashMap<String, int[]> featureMatrix = null;
+                            // segments with features represented on this projection (other features zeroed out);
+                            // read through featureMatrix(), which makes it on first use
+public int[] criterialFeatures          = null;  // features of segments on this projection (null if segments listed explicitly)
+public boolean[] featureMask            = null;  // featureMask[j]==true iff jth feature is on this projection
+volatile BitSet[] attributeSegments     = null;  // projected segments with each attribute (see attributeSegments())
+volatile long[][] packedFeatures        = null;  // packed features of each segment (see packedFeatures())
+ConcurrentHashMap<String,NaturalClass> expressions = new ConcurrentHashMap<String,NaturalClass>();
+                                                 // natural classes of parsed strings (see NaturalClassUtil.fromString())
+
+public volatile NaturalClasses naturalClasses = null; // natural classes on this projection (see getNaturalClasses())
+boolean hasNaturalClasses               = false; // does this projection have natural classes?
 public Corpus corpus                    = null; // corpus (same for all projections)
 public Corpus sample                    = null; // sample (same for all projections)
 //public NaturalClassFilter ncFilter      = null; // disjunctive filter applied to natural classes on this projection   // xxx broken
@@ -34,26 +44,30 @@ public IntTrie conTrie                  = null; // possible constraints over nat
 public int[] projectedForm              = new int[50];  // container for projected form
 public int projectedLength              = 0;            // length of projected form
 
-static int projectionCounter            = 0;
+static AtomicInteger projectionCounter  = new AtomicInteger();
 static int verbosity                    = 6;
+public static boolean lazyNaturalClasses = false; // build natural classes on first use (see getNaturalClasses())
 
 
 public Projection() { }
 
 // constructor for default projection without natural classes
 public Projection(Alphabet A) {
-    id                  = projectionCounter++;
+    id                  = projectionCounter.getAndIncrement();
     isDefault           = true;
     name                = "default";
     this.A              = A;
     segmentMask         = new BitSet(); segmentMask.set(0,A.nSegments);
     segmentMaskBoolean  = new boolean[A.nSegments];
     Arrays.fill(segmentMaskBoolean, true);
+    featureMatrix       = A.featureMatrix;
+    criterialFeatures   = new int[A.nFeatures];
+    featureMask         = new boolean[A.nFeatures]; Arrays.fill(featureMask, true);
 }
 
 // constructor for default projection
 public Projection(Alphabet A, boolean complementClasses) {
-    id                      = projectionCounter++;
+    id                      = projectionCounter.getAndIncrement();
     isDefault               = true;
 	name                    = "default";
     this.A                  = A;
@@ -61,7 +75,9 @@ public Projection(Alphabet A, boolean complementClasses) {
 	segmentMaskBoolean      = new boolean[A.nSegments]; Arrays.fill(segmentMaskBoolean, true);
     this.complementClasses  = complementClasses;
     this.featureMatrix      = A.featureMatrix;
-    naturalClasses          = new NaturalClasses(this);
+    criterialFeatures       = new int[A.nFeatures];
+    featureMask             = new boolean[A.nFeatures]; Arrays.fill(featureMask, true);
+    makeNaturalClasses();
 }
 
 // constructor for non-default projection
@@ -87,11 +103,16 @@ public Projection(Alphabet A, LinkedList<String> descriptor, boolean complementC
 }
 
 public Projection(Alphabet A, String[] descriptor, boolean complementClasses) {
+    this(A, descriptor, complementClasses, projectionCounter.getAndIncrement());
+}
+
+// constructor for non-default projection with the given id (see build())
+Projection(Alphabet A, String[] descriptor, boolean complementClasses, int id) {
 	if (verbosity>5)
         System.out.println("constructing projection from descriptor: "+
         java.util.Arrays.toString(descriptor) +" ...");
 
-    id = projectionCounter++;
+    this.id = id;
     isDefault = false;
     name = descriptor[0];
     this.A = A;
@@ -128,12 +149,81 @@ public Projection(Alphabet A, String[] descriptor, boolean complementClasses) {
     maxWordLength = maxConLength;
 
     this.complementClasses  = complementClasses;
-    this.naturalClasses     = new NaturalClasses(this);
+    makeNaturalClasses();
+}
+
+// construct non-default projections from descriptors (in the format 
+// above) concurrently, using the given number of threads (values less 
+// than one use all available processors); ids are assigned in the 
+// order of the descriptors, as if the projections were constructed 
+// one after another, and the projections are returned in that order
+// note: a LatticeBuilder instance must not be shared between threads; 
+// each projection makes its own (see NaturalClasses)
+public static List<Projection> build(Alphabet A, List<String[]> descriptors, boolean complementClasses, int parallelism) {
+    int n = descriptors.size();
+    int id0 = projectionCounter.getAndAdd(n);
+    if (parallelism<1)
+        parallelism = Runtime.getRuntime().availableProcessors();
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+        return pool.submit(() -> IntStream.range(0, n).parallel()
+            .mapToObj(i -> new Projection(A, descriptors.get(i), complementClasses, id0+i))
+            .collect(Collectors.toList())
+        ).get();
+    } catch (InterruptedException | ExecutionException e) {
+        throw new RuntimeException(e);
+    } finally {
+        pool.shutdown();
+    }
+}
+
+// make natural classes now, or on first use if lazyNaturalClasses
+private void makeNaturalClasses() {
+    hasNaturalClasses = true;
+    if (!lazyNaturalClasses)
+        naturalClasses = newNaturalClasses();
+}
+
+// natural classes for the current context of this projection, 
+// shared with other projections if NaturalClassRegistry is enabled
+private NaturalClasses newNaturalClasses() {
+    return NaturalClassRegistry.enabled ?
+        NaturalClassRegistry.get(this) : new NaturalClasses(this);
+}
+
+// natural classes on this projection (null for a projection without 
+// natural classes), built by the first caller if they were deferred; 
+// safe to call from several threads, but not concurrently with 
+// addSegment() or addFeature()
+public NaturalClasses getNaturalClasses() {
+    NaturalClasses C = naturalClasses;
+    if (C==null && hasNaturalClasses) {
+        synchronized (this) {
+            C = naturalClasses;
+            if (C==null) {
+                C = newNaturalClasses();
+                naturalClasses = C;
+            }
+        }
+    }
+    return C;
+}
+
+// build the deferred natural classes of the given projections in 
+// parallel, in the background; the returned future completes when 
+// all of them are built (projections built already are skipped)
+public static CompletableFuture<Void> warmUp(Collection<Projection> projections) {
+    return CompletableFuture.allOf(
+        projections.stream()
+            .map(proj -> CompletableFuture.runAsync(proj::getNaturalClasses))
+            .toArray(CompletableFuture[]::new)
+    );
 }
 
 // parse description of projected segments
 // xxx simplify this and following projection-defining methods with streams
 public void parseProjectedSegments(String projectedSegments) {
+    changed();
     segmentMask = new BitSet(A.nSegments);
     segmentMask.set(A.syms.wordBegin()); // boundary symbols are
     segmentMask.set(A.syms.wordEnd());   // always projected
@@ -141,11 +231,13 @@ public void parseProjectedSegments(String projectedSegments) {
     // description is "any": all segments are projected
     if (projectedSegments.equals("any")) {
         segmentMask.set(0, A.nSegments);
+        criterialFeatures = new int[A.nFeatures];
         return;
     }
     
     // explicit description of projected segment set
     if (projectedSegments.contains("{")) {
+        criterialFeatures = null;
         String[] segs = projectedSegments.replaceAll("[{}]", "").replaceAll(" ", "").split(",");
         for (String seg : segs)
             segmentMask.set(A.syms.get(seg));
@@ -160,24 +252,25 @@ public void parseProjectedSegments(String projectedSegments) {
             .mapToObj(i -> ((criterialFtrs[i]==1) ? "+" : "-") + A.featureNames.get(i))
             .collect(Collectors.joining(","))
     );
-    for (String seg : A.featureMatrix.keySet()) {
-        int[] ftrs = A.featureMatrix.get(seg);
-        if (FeatureUtil.subsumes(criterialFtrs, ftrs))
-            segmentMask.set(A.syms.get(seg));
+    int[] ftrs = new int[A.nFeatures];
+    for (int i=0; i<A.nSegments; i++) {
+        if (FeatureUtil.subsumes(criterialFtrs, A.features(i, ftrs)))
+            segmentMask.set(i);
     }
+    criterialFeatures = criterialFtrs;
 }
 
 // parse description of projected features
 public void parseProjectedFeatures(String projectedFeatures) {
     // get projected features
-    boolean[] featureMask = new boolean[A.nFeatures];
+    featureMask = new boolean[A.nFeatures];
     featureMask[0] = true;  // word-boundary feature
     if (projectedFeatures.equals("all")) {
         Arrays.fill(featureMask, true);
     } else {
         String[] ftrs = projectedFeatures.replaceAll(" *", "").split(",");
         for (String ftr : ftrs) {
-            featureMask[A.featureNames.indexOf(ftr)] = true;
+            featureMask[A.featureIndex(ftr)] = true;
         }
     }
     if (verbosity>5) System.out.println("\tprojected features: "+
@@ -189,23 +282,130 @@ public void parseProjectedFeatures(String projectedFeatures) {
     int nProjectedFtrs = (int) IntStream.range(0, A.nFeatures).filter(i -> featureMask[i]).count();
     if (verbosity>5) System.out.println("\tall features projected? "+ (nProjectedFtrs==A.nFeatures));
 
-    // reduced feature matrix specific to this projection
-    String seg = null;
-    int[] ftrs = null;
+    // features are read from the alphabet through the segment 
+    // and feature masks (see feature())
+    changed();
+}
+
+// add segment with the given features to the alphabet (if it is not
+// already there) and to this projection if it meets the criterial features,
+// updating natural classes incrementally (if they have been built, and 
+// rebuilding them if they are shared); returns the id of the segment
+// note: must be called for each projection on the alphabet
+public int addSegment(String seg, int[] ftrs) {
+    int id = A.syms.contains(seg) ? A.syms.get(seg) : A.addSegment(seg, ftrs);
+    // a segment already on the projection (e.g., listed explicitly) stays 
+    // on it, and its natural classes are unchanged
+    boolean wasProjected = (id<segmentMaskBoolean.length && segmentMask.get(id));
+    boolean projected = segmentMask.get(id) ||
+        (criterialFeatures!=null && FeatureUtil.subsumes(criterialFeatures, ftrs));
+    if (projected)
+        segmentMask.set(id);
+    anySegmentMasked = (segmentMask.cardinality()<A.nSegments);
+    segmentMaskBoolean = Arrays.copyOf(segmentMaskBoolean, A.nSegments);
+    segmentMaskBoolean[id] = segmentMask.get(id);
+
+    changed();
+    if (naturalClasses!=null && naturalClasses.shared)
+        naturalClasses = new NaturalClasses(this);
+    else if (naturalClasses!=null && !wasProjected)
+        naturalClasses.addSegment(this, id);
+    expressions.clear();
+    return id;
+}
+
+// add feature to this projection, updating natural classes incrementally
+// (if they have been built, and rebuilding them if they are shared)
+public Projection addFeature(String ftr) {
+    int j = A.featureIndex(ftr);
+    if (featureMask[j])
+        return this;
+    featureMask[j] = true;
+    changed();
+    if (naturalClasses!=null && naturalClasses.shared)
+        naturalClasses = new NaturalClasses(this);
+    else if (naturalClasses!=null)
+        naturalClasses.addFeature(this, j);
+    expressions.clear();
+    return this;
+}
+
+// forget what was derived from the segment mask, feature matrix, 
+// and natural classes of this projection
+void changed() {
+    if (featureMatrix!=A.featureMatrix)
+        featureMatrix = null;
+    attributeSegments = null;
+    packedFeatures = null;
+    expressions.clear();
+}
+
+// value of feature f for segment with id i on this projection 
+// (0 if the segment or the feature is not projected)
+public int feature(int i, int f) {
+    return (featureMask[f] && segmentMask.get(i)) ? A.feature(i, f) : 0;
+}
+
+// projected features of segment with id i (other features zeroed 
+// out), or null if the segment is not on this projection
+public int[] features(int i) {
+    if (!segmentMask.get(i))
+        return null;
+    int[] ftrs = A.features(i);
+    for (int f=0; f<ftrs.length; f++)
+        if (!featureMask[f]) ftrs[f] = 0;
+    return ftrs;
+}
+
+// projected features of all segments, keyed by segment symbol in 
+// order of id (values as in features()); the alphabet's feature matrix 
+// on a default projection, otherwise made on first use and remade after 
+// the projection changes (the map must not be modified)
+public LinkedHashMap<String, int[]> featureMatrix() {
+    LinkedHashMap<String, int[]> featureMatrix = this.featureMatrix;
+    if (featureMatrix!=null)
+        return featureMatrix;
     featureMatrix = new LinkedHashMap<String, int[]>();
-    for (int i=0; i<A.nSegments; i++) {
-        seg  = A.syms.get(i);
-        if (!segmentMask.get(i)) {
-            featureMatrix.put(seg, null);
-            continue;
+    for (int i=0; i<A.nSegments; i++)
+        featureMatrix.put(A.syms.get(i), features(i));
+    this.featureMatrix = featureMatrix;
+    return featureMatrix;
+}
+
+// projected segments with each attribute (feature-value pair), 
+// indexed as in FormalContext: attributeSegments()[attribute(f,v)] 
+// contains the segments on this projection with value v for feature f;
+// made on first use and remade after the projection changes 
+// (the returned columns must not be modified)
+public BitSet[] attributeSegments() {
+    BitSet[] columns = attributeSegments;
+    if (columns!=null)
+        return columns;
+    columns = new BitSet[2*A.nFeatures];
+    for (int a=0; a<columns.length; a++)
+        columns[a] = new BitSet(A.nSegments);
+    for (int i=segmentMask.nextSetBit(0); i!=-1; i=segmentMask.nextSetBit(i+1)) {
+        for (int f=0; f<A.nFeatures; f++) {
+            int v = feature(i, f);
+            if (v!=0) columns[FormalContext.attribute(f, v)].set(i);
         }
-        ftrs = A.featureMatrix.get(seg);
-        ftrs = Arrays.copyOf(ftrs, ftrs.length);
-        for (int j=0; j<A.nFeatures; j++)
-            if (!featureMask[j]) ftrs[j] = 0;
-        featureMatrix.put(seg, ftrs);
-        
     }
+    attributeSegments = columns;
+    return columns;
+}
+
+// projected features of each segment, packed as in FeatureUtil.pack() 
+// (null for segments not on this projection); made on first use and 
+// remade after the projection changes (the rows must not be modified)
+public long[][] packedFeatures() {
+    long[][] rows = packedFeatures;
+    if (rows!=null)
+        return rows;
+    rows = new long[A.nSegments][];
+    for (int i=segmentMask.nextSetBit(0); i!=-1; i=segmentMask.nextSetBit(i+1))
+        rows[i] = FeatureUtil.pack(features(i));
+    packedFeatures = rows;
+    return rows;
 }
 
 // set maximum word length on this projection
@@ -233,14 +433,10 @@ public Projection setCorpus(Corpus corpus) {
     this.corpus = corpus;
     if (corpus==null) return this;
 
-    int form_id = 0;
-    int[] enform = null;
     corpusIndexer = new IntTrie(maxConLength+2);
-    for (String form : corpus.data.keySet()) {
-        enform = corpus.endata.get(form);
-        project(enform);
+    for (int form_id=0; form_id<corpus.data_size; form_id++) {
+        project(corpus.segments, corpus.start(form_id), corpus.end(form_id));
         corpusIndexer.update(projectedForm, projectedLength, form_id, 1);
-        form_id++;
     }
 
     return this;
@@ -254,14 +450,10 @@ public Projection setSample(Corpus sample) {
     this.sample = sample;
     if (sample==null) return this;
     
-    int form_id = 0;
-    int[] enform = null;
     sampleIndexer = new IntTrie(maxConLength+2);
-    for (String form : sample.data.keySet()) {
-        enform = sample.endata.get(form);
-        project(enform);
+    for (int form_id=0; form_id<sample.data_size; form_id++) {
+        project(sample.segments, sample.start(form_id), sample.end(form_id));
         sampleIndexer.update(projectedForm, projectedLength, form_id, 1);
-        form_id++;
     }
 
     return this;
@@ -270,12 +462,17 @@ public Projection setSample(Corpus sample) {
 // determine projected representation of form y
 // (sets global variables projectedForm and projectedLength)
 public void project(int[] y) {
+    project(y, 0, y.length);
+}
+
+// determine projected representation of y[start..end-1]
+public void project(int[] y, int start, int end) {
     projectedLength = 0;
-    for (int yi : y) {
-        if (!segmentMask.get(yi)) continue;
-        projectedForm[projectedLength++] = yi;
+    for (int i=start; i<end; i++) {
+        if (!segmentMask.get(y[i])) continue;
+        projectedForm[projectedLength++] = y[i];
     }
-    if (verbosity>9) System.out.println("projection of "+ java.util.Arrays.toString(y) +" is "+ java.util.Arrays.toString(projectedForm) +" ("+ projectedLength +")");
+    if (verbosity>9) System.out.println("projection of "+ java.util.Arrays.toString(Arrays.copyOfRange(y, start, end)) +" is "+ java.util.Arrays.toString(projectedForm) +" ("+ projectedLength +")");
 }
 
 public Alphabet getAlphabet() { return A; }
@@ -0,0 +1,110 @@
+// used by Alphabet
+// Trie of the symbols in a symbol table, for looking up symbols in 
+// character sequences without making strings: exact lookup of a 
+// delimited token, and greedy longest match for undelimited input 
+// (e.g., "tsa" -> ts a if ts is a symbol). The trie is compiled into 
+// arrays; the edges of each node are sorted by character and searched 
+// by bisection, so lookups do not allocate.
+
+package edu.jhu.features;
+
+import java.util.*;
+import edu.jhu.util.*;
+
+class SymbolTrie
+{
+
+int size        = 0;        // number of entries in the symbol table
+int[] symbol    = null;     // symbol[node]: id of the symbol ending at node, or -1
+int[] first     = null;     // edges of node are first[node] ... first[node+1]-1
+char[] label    = null;     // label[edge]: character on edge
+int[] target    = null;     // target[edge]: node reached by edge
+
+SymbolTrie(SymbolTable syms) {
+    // build trie with maps, then compile into arrays (nodes in
+    // breadth-first order, so the edges of each node are contiguous)
+    ArrayList<TreeMap<Character,Integer>> children = new ArrayList<TreeMap<Character,Integer>>();
+    ArrayList<Integer> symbols = new ArrayList<Integer>();
+    children.add(new TreeMap<Character,Integer>());
+    symbols.add(-1);
+    size = syms.table.size();
+    for (Map.Entry<Integer,String> entry : syms.table.entrySet()) {
+        String sym = entry.getValue();
+        if (sym==null || sym.isEmpty()) continue;
+        int node = 0;
+        for (int i=0; i<sym.length(); i++) {
+            Integer child = children.get(node).get(sym.charAt(i));
+            if (child==null) {
+                child = children.size();
+                children.add(new TreeMap<Character,Integer>());
+                symbols.add(-1);
+                children.get(node).put(sym.charAt(i), child);
+            }
+            node = child;
+        }
+        symbols.set(node, entry.getKey());
+    }
+
+    int n = children.size();
+    int[] order = new int[n];       // order[new node] = old node
+    int[] rank = new int[n];        // rank[old node] = new node
+    int m = 1;
+    for (int k=0; k<m; k++) {
+        rank[order[k]] = k;
+        for (int child : children.get(order[k]).values())
+            order[m++] = child;
+    }
+    symbol = new int[n];
+    first = new int[n+1];
+    label = new char[n-1];
+    target = new int[n-1];
+    int e = 0;
+    for (int k=0; k<n; k++) {
+        symbol[k] = symbols.get(order[k]);
+        first[k] = e;
+        for (Map.Entry<Character,Integer> edge : children.get(order[k]).entrySet()) {
+            label[e] = edge.getKey();
+            target[e] = rank[edge.getValue()];
+            e++;
+        }
+    }
+    first[n] = e;
+}
+
+// node reached from node by character c, or -1
+int next(int node, char c) {
+    int lo = first[node];
+    int hi = first[node+1]-1;
+    while (lo<=hi) {
+        int mid = (lo+hi) >>> 1;
+        if (label[mid]<c) lo = mid+1;
+        else if (label[mid]>c) hi = mid-1;
+        else return target[mid];
+    }
+    return -1;
+}
+
+// id of the symbol s[start..end-1], or -1 if there is none
+int get(CharSequence s, int start, int end) {
+    int node = 0;
+    for (int i=start; i<end && node!=-1; i++)
+        node = next(node, s.charAt(i));
+    return (node==-1) ? -1 : symbol[node];
+}
+
+// longest symbol that begins at s[start] (and ends before end): 
+// returns (id << 32) | (position after the symbol), or -1 if no 
+// symbol begins there
+long match(CharSequence s, int start, int end) {
+    long value = -1L;
+    int node = 0;
+    for (int i=start; i<end; i++) {
+        node = next(node, s.charAt(i));
+        if (node==-1) break;
+        if (symbol[node]!=-1)
+            value = ((long) symbol[node] << 32) | (i+1);
+    }
+    return value;
+}
+
+}